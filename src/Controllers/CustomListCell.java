@@ -17,7 +17,11 @@ import Models.Album;
  * Each cell displays an album's name, date range, and photo count.
  */
 public class CustomListCell extends ListCell<Album> {
-   
+
+    // Every cell shows the same icon, so it is decoded once
+    private static Image folderIcon;
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("MM/dd/yy");
+
     private HBox content;
     private Text title;
     private Text details;
@@ -30,7 +34,10 @@ public class CustomListCell extends ListCell<Album> {
         super();
         title = new Text();
         details = new Text();
-        image = new ImageView(new Image("/Controllers/Icon/folder.jpg")); // Update path
+        if (folderIcon == null) {
+            folderIcon = new Image("/Controllers/Icon/folder.jpg");
+        }
+        image = new ImageView(folderIcon);
         image.setFitHeight(30);
         image.setFitWidth(30);
         content = new HBox(image, title, details);
@@ -51,12 +58,11 @@ public class CustomListCell extends ListCell<Album> {
         if (album != null && !empty) {
             title.setText(album.getName());
             
-            // Get the date range
+            // The album keeps its date range up to date, so no photo is visited here
             LocalDateTime[] dateRange = album.getDate();
             if (dateRange != null) {
-                DateTimeFormatter formatter = DateTimeFormatter.ofPattern("MM/dd/yy");
-                String startDate = dateRange[0].format(formatter);
-                String endDate = dateRange[1].format(formatter);
+                String startDate = dateRange[0].format(DATE_FORMAT);
+                String endDate = dateRange[1].format(DATE_FORMAT);
                 details.setText("Dates: " + startDate + " - " + endDate + " | Photos: " + album.getCount());
             } else {
                 details.setText("Dates: N/A | Photos: " + album.getCount());
@@ -3,6 +3,8 @@ package Controllers;
 import Models.Album;
 import Models.StorePhoto;
 import Models.Admin;
+import Models.PersistenceService;
+import Models.PhotoQuery;
 import Models.User;
 import Models.UserSession;
 import Models.Tag;
@@ -12,7 +14,6 @@ import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
@@ -129,9 +130,8 @@ public class GalleryController {
             Album newAlbum = new Album(albumName);
             currentUser.CreateAlbum(albumName);
             observableAlbums.add(newAlbum);
+            admin.getJournal(currentUser).createAlbum(albumName);
         });
-
-        admin.saveUsersToFile("src/User-Data/users.dat");
     }
     
     /**
@@ -153,12 +153,11 @@ public class GalleryController {
                 // Delete the album
                 currentUser.DeleteAlbum(selectedAlbum.getName());
                 observableAlbums.remove(selectedAlbum);
+                admin.getJournal(currentUser).deleteAlbum(selectedAlbum.getName());
                 // Update ListView
                 albumListView.refresh();
             }
 
-            admin.saveUsersToFile("src/User-Data/users.dat");
-
         } else {
             // No album selected
             Alert noSelectionAlert = new Alert(Alert.AlertType.INFORMATION);
@@ -188,8 +187,10 @@ public class GalleryController {
                 // Check if the new name is different and non-empty
                 if (!newName.trim().isEmpty() && !newName.equals(selectedAlbum.getName())) {
                     // Update the album name
-                    currentUser.RenameAlbum(selectedAlbum.getName(), newName);
+                    String oldName = selectedAlbum.getName();
+                    currentUser.RenameAlbum(oldName, newName);
                     selectedAlbum.setName(newName);
+                    admin.getJournal(currentUser).renameAlbum(oldName, newName);
                     albumListView.refresh(); // Refresh ListView to show new name
                 } else {
                     // Handle cases where the new name is invalid or the same as the old name
@@ -201,8 +202,6 @@ public class GalleryController {
                 }
             });
 
-            admin.saveUsersToFile("src/User-Data/users.dat");
-
         } else {
             // Handle cases where no album is selected
             Alert alert = new Alert(Alert.AlertType.INFORMATION);
@@ -274,6 +273,7 @@ public class GalleryController {
      */
     @FXML
     private void onLogoutBtnClicked(ActionEvent event){
+        PersistenceService.getInstance().flush();
         try{
             FXMLLoader loader = new FXMLLoader(getClass().getResource("/Views/LoginView.fxml"));
             Parent root = loader.load();
@@ -302,7 +302,7 @@ public class GalleryController {
     @FXML
     private void onSearchBtnClicked(){
         // Ask for search type
-        List<String> choices = Arrays.asList("Date Range", "Tag Search");
+        List<String> choices = Arrays.asList("Date Range", "Tag Search", "Caption Search", "Advanced Query");
         ChoiceDialog<String> initialChoiceDialog = new ChoiceDialog<>(null, choices);
         initialChoiceDialog.setTitle("Search Options");
         initialChoiceDialog.setHeaderText("Choose your search type");
@@ -317,6 +317,63 @@ public class GalleryController {
                 case "Tag Search":
                     onSearchByTagClicked();
                     break;
+                case "Caption Search":
+                    performCaptionSearch();
+                    break;
+                case "Advanced Query":
+                    performQuerySearch();
+                    break;
+            }
+        });
+    }
+
+    /**
+     * Asks for words to look for in captions and shows the best matches first.
+     */
+    private void performCaptionSearch() {
+        TextInputDialog dialog = new TextInputDialog();
+        dialog.setTitle("Caption Search");
+        dialog.setHeaderText("Enter words from the caption");
+        dialog.setContentText("Words:");
+
+        Optional<String> result = dialog.showAndWait();
+        result.ifPresent(text -> {
+            List<StorePhoto> results = currentUser.searchCaptions(text);
+            if (results.isEmpty()) {
+                showAlert("No Results", "No captions match the given words.", Alert.AlertType.INFORMATION);
+            } else {
+                displaySearchResults(results);
+            }
+        });
+    }
+
+    /**
+     * Asks for a query such as (person=alice OR person=bob) AND date>=2023-01-01
+     * and shows the matching photos.
+     */
+    private void performQuerySearch() {
+        TextInputDialog dialog = new TextInputDialog();
+        dialog.setTitle("Advanced Query");
+        dialog.setHeaderText("Combine key=value tags, date>=yyyy-MM-dd, album=name and caption~text\nwith AND, OR, NOT and parentheses");
+        dialog.setContentText("Query:");
+
+        Optional<String> result = dialog.showAndWait();
+        result.ifPresent(text -> {
+            if (text.trim().isEmpty()) {
+                showAlert("Empty Query", "Please enter a query.", Alert.AlertType.ERROR);
+                return;
+            }
+            List<StorePhoto> results;
+            try {
+                results = PhotoQuery.parse(text).execute(currentUser);
+            } catch (IllegalArgumentException e) {
+                showAlert("Invalid Query", e.getMessage(), Alert.AlertType.ERROR);
+                return;
+            }
+            if (results.isEmpty()) {
+                showAlert("No Results", "No photos match the query.", Alert.AlertType.INFORMATION);
+            } else {
+                displaySearchResults(results);
             }
         });
     }
@@ -391,47 +448,27 @@ public class GalleryController {
      * gets min date from all albums
      */
     private LocalDate getMinDateFromAlbums() {
-        return currentUser.getAlbums().stream()
-        .flatMap(album -> album.getPhotos().stream())
-        .map(photo -> photo.getDateTaken().toLocalDate())
-        .min(Comparator.naturalOrder())
-        .orElse(LocalDate.now());// In case there are no photos, return the current date as a fallback
+        LocalDateTime earliest = currentUser.getEarliestDate();
+        return earliest == null ? LocalDate.now() : earliest.toLocalDate(); // In case there are no photos, return the current date as a fallback
     }
 
     /**
      * gets max date from all albums
      */
     private LocalDate getMaxDateFromAlbums() {
-        return currentUser.getAlbums().stream()
-            .flatMap(album -> album.getPhotos().stream())
-            .map(photo -> photo.getDateTaken().toLocalDate())
-            .max(Comparator.naturalOrder())
-            .orElse(LocalDate.now()); // In case there are no photos, return the current date as a fallback
+        LocalDateTime latest = currentUser.getLatestDate();
+        return latest == null ? LocalDate.now() : latest.toLocalDate(); // In case there are no photos, return the current date as a fallback
     }
 
     /**
      * gets list of photos from date range given by user
      */
     private List<StorePhoto> getPhotosInDateRange(LocalDate startDate, LocalDate endDate) {
-        List<StorePhoto> matchingPhotos = new ArrayList<>();
-
         // Convert start and end date to LocalDateTime at start/end of day for comparison
         LocalDateTime startDateTime = startDate.atStartOfDay();
         LocalDateTime endDateTime = endDate.atTime(23, 59, 59);
 
-        for (Album album : currentUser.getAlbums()) {
-            for (StorePhoto photo : album.getPhotos()) {
-                // Get the photo's LocalDateTime directly
-                LocalDateTime photoDateTime = photo.getDateTaken();
-
-                // Check if the photo's date is within the range
-                if (!photoDateTime.isBefore(startDateTime) && !photoDateTime.isAfter(endDateTime)) {
-                    matchingPhotos.add(photo);
-                }
-            }
-        }
-
-        return matchingPhotos;
+        return currentUser.getPhotosInDateRange(startDateTime, endDateTime);
     }
 
     /**
@@ -490,15 +527,7 @@ public class GalleryController {
      * helper method to get photos by single tag
      */
     private List<StorePhoto> getPhotosBySingleTag(Tag searchTag) {
-        List<StorePhoto> matchingPhotos = new ArrayList<>();
-        for (Album album : currentUser.getAlbums()) {
-            for (StorePhoto photo : album.getPhotos()) {
-                if (photo.getTags().contains(searchTag)) {
-                    matchingPhotos.add(photo);
-                }
-            }
-        }
-        return matchingPhotos;
+        return new ArrayList<>(currentUser.getPhotosWithTag(searchTag));
     }
 
     /**
@@ -587,21 +616,13 @@ public class GalleryController {
      */
     private List<StorePhoto> getPhotosByDoubleTag(Tag firstTag, Tag secondTag, String condition) 
     {
-        List<StorePhoto> matchingPhotos = new ArrayList<>();
-        for (Album album : currentUser.getAlbums()) {
-            for (StorePhoto photo : album.getPhotos()) {
-                boolean firstTagMatch = photo.getTags().contains(firstTag);
-                boolean secondTagMatch = photo.getTags().contains(secondTag);
-
-                // Check condition
-                if ("AND".equals(condition) && firstTagMatch && secondTagMatch) {
-                    matchingPhotos.add(photo);
-                } else if ("OR".equals(condition) && (firstTagMatch || secondTagMatch)) {
-                    matchingPhotos.add(photo);
-                }
-            }
+        List<Tag> tags = Arrays.asList(firstTag, secondTag);
+
+        // Check condition
+        if ("AND".equals(condition)) {
+            return new ArrayList<>(currentUser.getPhotosWithAllTags(tags));
         }
-        return matchingPhotos;
+        return new ArrayList<>(currentUser.getPhotosWithAnyTag(tags));
     }
 
     /**
@@ -609,14 +630,9 @@ public class GalleryController {
      */
     private Set<String> getAllAvailableTags() 
     {
-        
         Set<String> allTagPairs = new HashSet<>();
-        for (Album album : currentUser.getAlbums()) {
-            for (StorePhoto photo : album.getPhotos()) {
-                for (Tag tag : photo.getTags()) {
-                    allTagPairs.add(tag.getKey() + ": " + tag.getVal());
-                }
-            }
+        for (Tag tag : currentUser.getTags()) {
+            allTagPairs.add(tag.toString());
         }
         return allTagPairs;
     }
@@ -637,17 +653,16 @@ public class GalleryController {
             SearchPhotoController searchResultsController = loader.getController();
             
 
-            // remove duplicates
+            // remove duplicates, by the photos' stable ids
 
-            Set<String> paths = new HashSet<>(); // to store unique paths
+            Set<Long> photoIds = new HashSet<>();
             Iterator<StorePhoto> iterator = matchingPhotos.iterator();
 
             while (iterator.hasNext()) {
                 StorePhoto photo = iterator.next();
-                String path = photo.getPath();
                 
-                // If the set already contains this path, remove the photo from the iterator (and thus the list)
-                if (!paths.add(path)) {
+                // If the set already contains this photo, remove it from the iterator (and thus the list)
+                if (!photoIds.add(photo.getPhotoId())) {
                     iterator.remove();
                 }
             }
@@ -0,0 +1,300 @@
+package Controllers;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+import javafx.scene.image.Image;
+
+/**
+ * Process-wide cache of decoded images, shared by all windows.
+ * Images are kept by path and requested size, in least recently used order, and the
+ * oldest are dropped once the decoded pixels exceed a byte budget. Re-rendering an album
+ * after an edit therefore reuses the images already on screen instead of decoding the
+ * files again. Each image remembers the modification time of its file: the loading
+ * methods, which run off the FX thread, decode a file again if it changed, while the
+ * {@code getCached} methods only look in memory and never touch the file system.
+ */
+public class ImageCache {
+
+    /** Default budget for decoded pixels, in bytes. */
+    public static final long DEFAULT_BUDGET = 256L * 1024 * 1024;
+
+    private static ImageCache instance;
+
+    private final LinkedHashMap<Key, Entry> images = new LinkedHashMap<>(64, 0.75f, true);
+    private final long budget;
+    private long bytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * Creates a cache holding at most a given number of bytes of decoded pixels.
+     *
+     * @param budget the budget in bytes
+     */
+    public ImageCache(long budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * Gets the singleton instance of the image cache.
+     *
+     * @return the image cache
+     */
+    public static synchronized ImageCache getInstance() {
+        if (instance == null) {
+            instance = new ImageCache(DEFAULT_BUDGET);
+        }
+        return instance;
+    }
+
+    /**
+     * Gets the list thumbnail of a photo.
+     *
+     * @param path the path of the photo
+     * @param height the thumbnail height in pixels
+     * @return the thumbnail
+     */
+    public Image getThumbnail(String path, int height) {
+        return get(new Key(path, Key.THUMBNAIL, 0, height), () -> ThumbnailCache.getInstance().getThumbnail(path, height));
+    }
+
+    /**
+     * Gets a photo decoded to fit a size, keeping its aspect ratio.
+     *
+     * @param path the path of the photo
+     * @param width the width to fit, or 0 for no limit
+     * @param height the height to fit, or 0 for no limit
+     * @return the image
+     */
+    public Image getImage(String path, int width, int height) {
+        return get(new Key(path, Key.IMAGE, width, height), () -> new Image(new File(path).toURI().toString(), width, height, true, true));
+    }
+
+    /**
+     * Gets a list thumbnail only if it is already decoded.
+     *
+     * @param path the path of the photo
+     * @param height the thumbnail height in pixels
+     * @return the thumbnail, or null if it is not cached
+     */
+    public Image getCachedThumbnail(String path, int height) {
+        return peek(new Key(path, Key.THUMBNAIL, 0, height));
+    }
+
+    /**
+     * Gets a photo decoded to fit a size only if it is already decoded.
+     *
+     * @param path the path of the photo
+     * @param width the width to fit, or 0 for no limit
+     * @param height the height to fit, or 0 for no limit
+     * @return the image, or null if it is not cached
+     */
+    public Image getCachedImage(String path, int width, int height) {
+        return peek(new Key(path, Key.IMAGE, width, height));
+    }
+
+    /**
+     * Gets a rendition of a photo from the {@link RenditionStore}.
+     *
+     * @param path the path of the photo
+     * @param size the rendition size
+     * @return the rendition
+     */
+    public Image getRendition(String path, int size) {
+        return get(new Key(path, Key.RENDITION, size, size), () -> RenditionStore.getInstance().getRendition(path, size));
+    }
+
+    /**
+     * Gets a rendition of a photo only if it is already decoded.
+     *
+     * @param path the path of the photo
+     * @param size the rendition size
+     * @return the rendition, or null if it is not cached
+     */
+    public Image getCachedRendition(String path, int size) {
+        return peek(new Key(path, Key.RENDITION, size, size));
+    }
+
+    /**
+     * Gets a full-resolution tile of a photo from the {@link RenditionStore}.
+     *
+     * @param path the path of the photo
+     * @param column the tile column
+     * @param row the tile row
+     * @return the tile, or null if the photo cannot be read
+     */
+    public Image getTile(String path, int column, int row) {
+        return get(new Key(path, Key.TILE, column, row), () -> RenditionStore.getInstance().getTile(path, column, row));
+    }
+
+    /**
+     * Gets a full-resolution tile of a photo only if it is already decoded.
+     *
+     * @param path the path of the photo
+     * @param column the tile column
+     * @param row the tile row
+     * @return the tile, or null if it is not cached
+     */
+    public Image getCachedTile(String path, int column, int row) {
+        return peek(new Key(path, Key.TILE, column, row));
+    }
+
+    /**
+     * Gets the number of loads answered from the cache. Lookups with the
+     * {@code getCached} methods are not counted.
+     *
+     * @return the hit count
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Gets the number of loads that had to decode an image.
+     *
+     * @return the miss count
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Gets the number of images dropped to stay within the budget.
+     *
+     * @return the eviction count
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Gets the number of bytes of decoded pixels currently held.
+     *
+     * @return the size in bytes
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Drops every cached image.
+     */
+    public synchronized void clear() {
+        images.clear();
+        bytes = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("ImageCache[%d images, %d KB of %d KB, %d hits, %d misses, %d evictions]",
+                images.size(), bytes / 1024, budget / 1024, hits, misses, evictions);
+    }
+
+    /**
+     * Looks an image up in memory only, without checking its file, so it is safe to call
+     * on the FX thread. It is not counted as a hit or a miss, since the image loader
+     * follows every peek with a {@link #get} that is.
+     */
+    private synchronized Image peek(Key key) {
+        Entry cached = images.get(key);
+        return cached == null ? null : cached.image;
+    }
+
+    /**
+     * Gets an image, decoding it again if its file changed since it was cached.
+     * Called off the FX thread.
+     */
+    private Image get(Key key, Supplier<Image> loader) {
+        long modified = new File(key.path).lastModified();
+        synchronized (this) {
+            Entry cached = images.get(key);
+            if (cached != null && cached.modified == modified) {
+                hits++;
+                return cached.image;
+            }
+            misses++;
+        }
+        // Decode outside the lock so one slow file does not hold up other lookups
+        Image image = loader.get();
+        if (image == null || image.isError()) {
+            return image;
+        }
+        synchronized (this) {
+            Entry previous = images.put(key, new Entry(image, modified));
+            if (previous != null) {
+                bytes -= sizeOf(previous.image);
+            }
+            bytes += sizeOf(image);
+            evict();
+        }
+        return image;
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<Key, Entry>> eldest = images.entrySet().iterator();
+        while (bytes > budget && images.size() > 1) {
+            bytes -= sizeOf(eldest.next().getValue().image);
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    private static long sizeOf(Image image) {
+        return (long) image.getWidth() * (long) image.getHeight() * 4;
+    }
+
+    /**
+     * Identifies an image by file, kind and requested size. Tiles use the size fields for
+     * their column and row.
+     */
+    private static final class Key {
+        static final int THUMBNAIL = 0;
+        static final int IMAGE = 1;
+        static final int RENDITION = 2;
+        static final int TILE = 3;
+
+        private final String path;
+        private final int kind;
+        private final int width;
+        private final int height;
+
+        Key(String path, int kind, int width, int height) {
+            this.path = path;
+            this.kind = kind;
+            this.width = width;
+            this.height = height;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return kind == other.kind && width == other.width && height == other.height && path.equals(other.path);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(path, kind, width, height);
+        }
+    }
+
+    /**
+     * A cached image and the modification time its file had when it was decoded.
+     */
+    private static final class Entry {
+        private final Image image;
+        private final long modified;
+
+        Entry(Image image, long modified) {
+            this.image = image;
+            this.modified = modified;
+        }
+    }
+}
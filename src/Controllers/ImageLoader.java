@@ -0,0 +1,265 @@
+package Controllers;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+import javafx.application.Platform;
+import javafx.beans.value.ChangeListener;
+import javafx.scene.Scene;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.PixelWriter;
+import javafx.scene.image.WritableImage;
+import javafx.stage.Window;
+
+/**
+ * Decodes images for image views on a small pool of background threads.
+ * A view first shows a plain placeholder of the expected size, and the decoded image
+ * is swapped in on the FX thread when it is ready. Images already in the
+ * {@link ImageCache} are shown at once, and a request still checks in the background
+ * that their file has not changed since.
+ *
+ * <p>A request only runs while its view is in a scene whose window is showing. If the
+ * view leaves the scene (a list cell scrolled away or a list cleared) or the window is
+ * hidden, the pending decode is cancelled, and it is resubmitted if the view is shown
+ * again. Loading a new image into a view replaces the view's pending request.</p>
+ *
+ * <p>All methods must be called on the FX thread.</p>
+ */
+public class ImageLoader {
+
+    private static final String REQUEST_KEY = "ImageLoader.request";
+    private static final int THREADS = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+
+    private static ImageLoader instance;
+
+    private final ExecutorService pool;
+    private final Map<Long, Image> placeholders = new HashMap<>();
+
+    private ImageLoader() {
+        pool = Executors.newFixedThreadPool(THREADS, task -> {
+            Thread thread = new Thread(task, "image-loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Gets the singleton instance of the image loader.
+     *
+     * @return the image loader
+     */
+    public static synchronized ImageLoader getInstance() {
+        if (instance == null) {
+            instance = new ImageLoader();
+        }
+        return instance;
+    }
+
+    /**
+     * Loads the list thumbnail of a photo into a view.
+     *
+     * @param view the view to show the thumbnail in
+     * @param path the path of the photo
+     * @param height the thumbnail height in pixels
+     */
+    public void loadThumbnail(ImageView view, String path, int height) {
+        ImageCache cache = ImageCache.getInstance();
+        load(view, cache.getCachedThumbnail(path, height), height * 4 / 3, height,
+                () -> cache.getThumbnail(path, height));
+    }
+
+    /**
+     * Loads a photo decoded to fit a size into a view.
+     *
+     * @param view the view to show the photo in
+     * @param path the path of the photo
+     * @param width the width to fit, or 0 for no limit
+     * @param height the height to fit, or 0 for no limit
+     */
+    public void loadImage(ImageView view, String path, int width, int height) {
+        ImageCache cache = ImageCache.getInstance();
+        int placeholderWidth = width > 0 ? width : height * 4 / 3;
+        int placeholderHeight = height > 0 ? height : width * 3 / 4;
+        load(view, cache.getCachedImage(path, width, height), placeholderWidth, placeholderHeight,
+                () -> cache.getImage(path, width, height));
+    }
+
+    /**
+     * Loads a rendition of a photo into a view. Unlike the other loads, the view keeps
+     * showing its current image until the rendition is ready, so switching to a sharper
+     * rendition while zooming does not flash a placeholder.
+     *
+     * @param view the view to show the rendition in
+     * @param path the path of the photo
+     * @param size the rendition size
+     */
+    public void loadRendition(ImageView view, String path, int size) {
+        ImageCache cache = ImageCache.getInstance();
+        load(view, cache.getCachedRendition(path, size), () -> cache.getRendition(path, size));
+    }
+
+    /**
+     * Loads a full-resolution tile of a photo into a view, leaving the view empty until
+     * the tile is ready.
+     *
+     * @param view the view to show the tile in
+     * @param path the path of the photo
+     * @param column the tile column
+     * @param row the tile row
+     */
+    public void loadTile(ImageView view, String path, int column, int row) {
+        ImageCache cache = ImageCache.getInstance();
+        load(view, cache.getCachedTile(path, column, row), () -> cache.getTile(path, column, row));
+    }
+
+    /**
+     * Cancels the pending load of a view, if any.
+     *
+     * @param view the view
+     */
+    public void cancel(ImageView view) {
+        Object pending = view.getProperties().remove(REQUEST_KEY);
+        if (pending instanceof Request) {
+            ((Request) pending).cancel();
+        }
+    }
+
+    private void load(ImageView view, Image cached, int width, int height, Supplier<Image> decoder) {
+        if (cached == null) {
+            view.setImage(placeholder(width, height));
+        }
+        load(view, cached, decoder);
+    }
+
+    private void load(ImageView view, Image cached, Supplier<Image> decoder) {
+        cancel(view);
+        if (cached != null) {
+            // Shown at once; the request below only checks off the FX thread that the file is unchanged
+            view.setImage(cached);
+        }
+        Request request = new Request(view, decoder);
+        view.getProperties().put(REQUEST_KEY, request);
+        request.attach();
+    }
+
+    /**
+     * Gets a plain light grey image of a size, shared by all views waiting at that size.
+     */
+    private Image placeholder(int width, int height) {
+        int w = Math.max(width, 1);
+        int h = Math.max(height, 1);
+        return placeholders.computeIfAbsent(((long) w << 32) | h, size -> {
+            WritableImage image = new WritableImage(w, h);
+            int[] row = new int[w];
+            Arrays.fill(row, 0xFFE6E6E6);
+            PixelWriter writer = image.getPixelWriter();
+            for (int y = 0; y < h; y++) {
+                writer.setPixels(0, y, w, 1, PixelFormat.getIntArgbInstance(), row, 0, w);
+            }
+            return image;
+        });
+    }
+
+    /**
+     * One pending load, submitted to the pool while its view is on a showing window.
+     */
+    private class Request {
+        private final ImageView view;
+        private final Supplier<Image> decoder;
+        private final ChangeListener<Scene> sceneListener = (obs, oldScene, newScene) -> update();
+        private final ChangeListener<Window> windowListener = (obs, oldWindow, newWindow) -> update();
+        private final ChangeListener<Boolean> showingListener = (obs, wasShowing, isShowing) -> update();
+        private Scene scene;
+        private Window window;
+        private Future<?> future;
+        private volatile boolean cancelled;
+
+        Request(ImageView view, Supplier<Image> decoder) {
+            this.view = view;
+            this.decoder = decoder;
+        }
+
+        void attach() {
+            view.sceneProperty().addListener(sceneListener);
+            update();
+        }
+
+        /**
+         * Follows the view's scene and window, and runs or pauses the decode to match.
+         */
+        void update() {
+            if (cancelled) {
+                return;
+            }
+            Scene newScene = view.getScene();
+            if (newScene != scene) {
+                if (scene != null) {
+                    scene.windowProperty().removeListener(windowListener);
+                }
+                scene = newScene;
+                if (scene != null) {
+                    scene.windowProperty().addListener(windowListener);
+                }
+            }
+            Window newWindow = scene == null ? null : scene.getWindow();
+            if (newWindow != window) {
+                if (window != null) {
+                    window.showingProperty().removeListener(showingListener);
+                }
+                window = newWindow;
+                if (window != null) {
+                    window.showingProperty().addListener(showingListener);
+                }
+            }
+
+            if (window != null && window.isShowing()) {
+                if (future == null) {
+                    future = pool.submit(this::decode);
+                }
+            } else if (future != null) {
+                // Only drops the decode if it has not started; a running one still finishes
+                future.cancel(false);
+                future = null;
+            }
+        }
+
+        private void decode() {
+            if (cancelled) {
+                return;
+            }
+            Image image = decoder.get();
+            Platform.runLater(() -> {
+                if (!cancelled && view.getProperties().get(REQUEST_KEY) == this) {
+                    view.getProperties().remove(REQUEST_KEY);
+                    detach();
+                    view.setImage(image);
+                }
+            });
+        }
+
+        void cancel() {
+            cancelled = true;
+            if (future != null) {
+                future.cancel(false);
+            }
+            detach();
+        }
+
+        private void detach() {
+            view.sceneProperty().removeListener(sceneListener);
+            if (scene != null) {
+                scene.windowProperty().removeListener(windowListener);
+            }
+            if (window != null) {
+                window.showingProperty().removeListener(showingListener);
+            }
+        }
+    }
+}
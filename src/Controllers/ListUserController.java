@@ -1,8 +1,6 @@
 package Controllers;
-import java.util.stream.Collectors;
 
 import Models.Admin;
-import Models.User;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
@@ -36,11 +34,7 @@ public class ListUserController {
      * Fetches usernames from the Admin instance and displays them in the ListView.
      */
     private void updateListView() {
-        userTable.getItems().setAll(
-            admin.getUsers().stream()
-                 .map(User::getUsername)
-                 .collect(Collectors.toList())
-        );
+        userTable.getItems().setAll(admin.getUsernames());
     }
 
     /**
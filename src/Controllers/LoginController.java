@@ -1,7 +1,6 @@
 package Controllers;
     
 import java.util.Optional;
-import java.util.List;
 
 
 import Models.Admin;
@@ -96,14 +95,7 @@ public class LoginController {
             try{
 
             //set current user for session
-            List<User> copy = admin.getUsers();
-            for (User u: copy)
-            {      
-                if (u.username.equals(username))
-                {
-                    UserSession.getInstance().setCurrentUser(u); 
-                }
-            }
+            UserSession.getInstance().setCurrentUser(userOpt.get());
 
  
 
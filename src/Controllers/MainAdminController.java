@@ -1,11 +1,10 @@
 package Controllers;
 
-import java.util.List;
+import java.util.Collection;
 import java.util.Optional;
-import java.util.stream.Collectors;
 
 import Models.Admin;
-import Models.User;
+import Models.PersistenceService;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
@@ -54,14 +53,13 @@ public class MainAdminController {
         String trimmedUsername = username.trim();
 
          // Check if the username already exists
-         if (admin.getUserByUsername(trimmedUsername).isPresent()) {
+         if (admin.hasUser(trimmedUsername)) {
             showAlert("User Exists", "User " + trimmedUsername + " already exists. Please use a different username.", Alert.AlertType.ERROR);
             return;
         }
 
         if (!username.trim().isEmpty()) {
             admin.addUser(username);
-            admin.saveUsersToFile("src/User-Data/users.dat");
             // Inform the admin that the user has been added
             showAlert("User Added", "User " + username + " has been successfully added.", Alert.AlertType.INFORMATION);
         } else {
@@ -77,13 +75,12 @@ public class MainAdminController {
      */
     @FXML
     private void onDeleteUserClicked(ActionEvent event) {
-        List<User> users = admin.getUsers(); // Method to get all User objects
-        if (users.isEmpty()) {
+        Collection<String> usernames = admin.getUsernames(); // Names only, so no user's albums are loaded
+        if (usernames.isEmpty()) {
             showAlert("No Users", "There are no users to delete.", Alert.AlertType.INFORMATION);
             return;
         }
 
-        List<String> usernames = users.stream().map(User::getUsername).collect(Collectors.toList());
         ChoiceDialog<String> dialog = new ChoiceDialog<>(null, usernames);
         dialog.setTitle("Delete User");
         dialog.setHeaderText("Select a User to Delete");
@@ -92,7 +89,6 @@ public class MainAdminController {
         Optional<String> result = dialog.showAndWait();
         result.ifPresent(username -> {
             admin.deleteUser(username);
-            admin.saveUsersToFile("src/User-Data/users.dat");
             showAlert("User Deleted", "User " + username + " has been successfully deleted.", Alert.AlertType.INFORMATION);
         });
      }
@@ -104,6 +100,7 @@ public class MainAdminController {
      */
     @FXML
     private void onLogOutClicked(ActionEvent event) {
+        PersistenceService.getInstance().flush();
         // Load the Delete User screen
         try {
             FXMLLoader fxmlLoader = new FXMLLoader(getClass().getResource("/Views/LoginView.fxml"));
@@ -0,0 +1,155 @@
+package Controllers;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.FutureTask;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javafx.application.Platform;
+import javafx.concurrent.Task;
+import Models.Album;
+import Models.BlobStore;
+import Models.Journal;
+import Models.PersistenceService;
+import Models.StorePhoto;
+
+/**
+ * Imports every JPEG and PNG under a folder into an album, in the background.
+ * Files already in the album are skipped. The rest are read in batches on a
+ * fork-join pool: each file is copied into the {@link BlobStore} in managed library
+ * mode, its header is read for its date and size, and its list thumbnail is
+ * generated. Each batch is then added to the album and the journal on the FX thread
+ * in one step, so the list grows a batch at a time. Pending edits are flushed once at
+ * the end. Cancelling stops after the batch in progress; the batches already added
+ * stay in the album.
+ *
+ * <p>The value of the task is the number of photos imported.</p>
+ */
+public class PhotoImportTask extends Task<Integer> {
+
+    /** Number of files read before they are added to the album together. */
+    public static final int BATCH_SIZE = 250;
+
+    private final File folder;
+    private final Album album;
+    private final Journal journal;
+    private final Set<String> known = new HashSet<>();
+
+    /**
+     * Creates an import of a folder into an album. Must be created on the FX thread.
+     *
+     * @param folder the folder to import, including its subfolders
+     * @param album the album to add the photos to
+     * @param journal the journal of the album's owner
+     */
+    public PhotoImportTask(File folder, Album album, Journal journal) {
+        this.folder = folder;
+        this.album = album;
+        this.journal = journal;
+        for (StorePhoto photo : album.getPhotos()) {
+            known.add(photo.getPath());
+        }
+    }
+
+    /**
+     * Checks whether a file has the extension of an image the application can show.
+     *
+     * @param path the file
+     * @return true for .jpg, .jpeg and .png files
+     */
+    public static boolean isImage(Path path) {
+        String name = path.getFileName().toString().toLowerCase(Locale.ROOT);
+        return name.endsWith(".jpg") || name.endsWith(".jpeg") || name.endsWith(".png");
+    }
+
+    @Override
+    protected Integer call() throws Exception {
+        updateMessage("Scanning " + folder.getName() + "...");
+        List<Path> files;
+        try (Stream<Path> walk = Files.walk(folder.toPath())) {
+            files = walk.filter(path -> Files.isRegularFile(path) && isImage(path))
+                        .map(Path::toAbsolutePath)
+                        .filter(path -> !known.contains(path.toString()))
+                        .sorted()
+                        .collect(Collectors.toList());
+        }
+
+        int total = files.size();
+        int imported = 0;
+        updateProgress(0, total);
+        ForkJoinPool pool = new ForkJoinPool(Math.max(2, Runtime.getRuntime().availableProcessors()));
+        try {
+            for (int from = 0; from < total && !isCancelled(); from += BATCH_SIZE) {
+                List<Path> slice = files.subList(from, Math.min(total, from + BATCH_SIZE));
+                List<StorePhoto> batch = pool.submit(() -> slice.parallelStream()
+                        .map(this::read)
+                        .filter(Objects::nonNull)
+                        .collect(Collectors.toList())).get();
+                if (isCancelled()) {
+                    break;
+                }
+                imported += commit(batch);
+                updateProgress(from + slice.size(), total);
+                updateMessage("Imported " + imported + " of " + total + " photos");
+            }
+        } finally {
+            pool.shutdownNow();
+            PersistenceService.getInstance().flush();
+        }
+        return imported;
+    }
+
+    /**
+     * Reads one file's header and prepares its thumbnail.
+     *
+     * @return the new photo, or null if the import was cancelled first
+     */
+    private StorePhoto read(Path path) {
+        if (isCancelled()) {
+            return null;
+        }
+        StorePhoto photo = StorePhoto.fromFile(BlobStore.importFile(path.toFile()));
+        ThumbnailCache.getInstance().prepare(photo.getPath(), ThumbnailCache.LIST_HEIGHT);
+        return photo;
+    }
+
+    /**
+     * Adds a batch to the album and the journal on the FX thread, and waits for it.
+     *
+     * @return the number of photos added
+     */
+    private int commit(List<StorePhoto> batch) throws InterruptedException, IOException {
+        FutureTask<Integer> commit = new FutureTask<>(() -> {
+            // Photos added by hand while the import ran, or twice in one batch, are added once
+            Set<String> paths = new HashSet<>();
+            List<StorePhoto> added = new ArrayList<>(batch.size());
+            for (StorePhoto photo : batch) {
+                if (paths.add(photo.getPath()) && album.getPhotoByPath(photo.getPath()) == null) {
+                    added.add(photo);
+                }
+            }
+            album.addPhotos(added);
+            for (StorePhoto photo : added) {
+                journal.addPhoto(album, photo);
+            }
+            return added.size();
+        });
+        Platform.runLater(commit);
+        try {
+            return commit.get();
+        } catch (ExecutionException e) {
+            throw new IOException("Cannot add photos to " + album.getName(), e.getCause());
+        }
+    }
+}
@@ -1,7 +1,8 @@
 package Controllers;
 
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
 import javafx.scene.control.ListCell;
-import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 
 import javafx.scene.control.Label;
@@ -15,6 +16,21 @@ import Models.StorePhoto;
  * 
  */
 public class PhotoListCell extends ListCell<StorePhoto> {
+
+    private final ImageView imageView = new ImageView();
+    private final Label captionLabel = new Label();
+    private final VBox vbox = new VBox(5, imageView, captionLabel);
+
+    /**
+     * Sets up the reusable thumbnail and caption nodes of the cell
+     */
+    public PhotoListCell() {
+        imageView.setFitHeight(ThumbnailCache.LIST_HEIGHT);
+        imageView.setPreserveRatio(true);
+        captionLabel.setWrapText(true);
+        vbox.setPadding(new Insets(10));
+        vbox.setAlignment(Pos.CENTER);
+    }
     
     /**
      * Handles update photo image
@@ -23,18 +39,14 @@ public class PhotoListCell extends ListCell<StorePhoto> {
     protected void updateItem(StorePhoto photo, boolean empty) {
         super.updateItem(photo, empty);
         if (empty || photo == null) {
+            ImageLoader.getInstance().cancel(imageView);
+            imageView.setImage(null);
             setText(null);
             setGraphic(null);
         } else {
-            ImageView imageView = new ImageView(new Image("file:" + photo.getPath()));
-            imageView.setFitHeight(100);
-            imageView.setPreserveRatio(true);
-
-            Label captionLabel = new Label(photo.getCaption());
-            VBox vbox = new VBox(imageView, captionLabel);
-            vbox.setSpacing(10); 
-
+            ImageLoader.getInstance().loadThumbnail(imageView, photo.getPath(), ThumbnailCache.LIST_HEIGHT);
+            captionLabel.setText(photo.getCaption());
             setGraphic(vbox);
         }
     }
-}
\ No newline at end of file
+}
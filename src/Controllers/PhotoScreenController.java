@@ -2,10 +2,17 @@ package Controllers;
 
 import Models.Admin;
 import Models.Album;
+import Models.AlbumListener;
+import Models.BlobStore;
+import Models.PersistenceService;
 import Models.StorePhoto;
 import Models.User;
 import Models.Tag;
 
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.concurrent.Task;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
@@ -22,27 +29,26 @@ import javafx.scene.control.ChoiceDialog;
 import javafx.scene.control.ComboBox;
 import javafx.scene.control.Dialog;
 import javafx.scene.control.Label;
-import javafx.scene.control.ListCell;
 import javafx.scene.control.TextField;
 import javafx.scene.control.TextInputDialog;
+import javafx.scene.control.ToggleButton;
 import javafx.scene.layout.GridPane;
 import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
 import javafx.stage.Stage;
+import javafx.util.Duration;
 import javafx.util.Pair;
+import javafx.stage.DirectoryChooser;
 import javafx.stage.FileChooser;
 import javafx.stage.Modality;
 import java.util.List;
 
 import java.io.File;
-import java.time.Instant;
-import java.time.LocalDateTime;
-import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import javafx.scene.control.ListView;
+import javafx.scene.control.ProgressBar;
 import java.util.Optional;
 import java.util.Set;
-import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import javafx.scene.image.Image;
@@ -55,7 +61,7 @@ import javafx.scene.image.ImageView;
 public class PhotoScreenController {  
     
     @FXML
-    private ListView<Node> PhotoListView;
+    private ListView<StorePhoto> PhotoListView;
 
     @FXML
     private Button addPhotoButton, deletePhotoButton, addTagButton, deleteTagButton,
@@ -67,6 +73,12 @@ public class PhotoScreenController {
     private Album selectedAlbum;
     private User currentUser;
     private StorePhoto selectedPhoto;
+    private final AlbumListener albumListener = new PhotoListUpdater();
+
+    private static final int SLIDESHOW_WIDTH = 800;
+    private static final int SLIDESHOW_HEIGHT = 540;
+    private static final int SLIDESHOW_PREFETCH = 2;
+    private static final Duration SLIDESHOW_INTERVAL = Duration.seconds(3);
     
     /**
      * Initializes the controller and sets up the list view for photo display.
@@ -97,15 +109,15 @@ public class PhotoScreenController {
      */
     @FXML
     public void setSelectedAlbum(Album album) {
-        for (Album userAlbum : currentUser.getAlbums()) {
-            if (userAlbum.equals(album)) { 
-                this.selectedAlbum = userAlbum;
-                loadPhotos();
-
-                return;
+        Album userAlbum = currentUser.getAlbumByName(album.getName());
+        if (userAlbum != null) {
+            if (this.selectedAlbum != null) {
+                this.selectedAlbum.removeListener(albumListener);
             }
+            this.selectedAlbum = userAlbum;
+            userAlbum.addListener(albumListener);
+            loadPhotos();
         }
-      
     }
     
     /**
@@ -120,39 +132,94 @@ public class PhotoScreenController {
         fileChooser.getExtensionFilters().add(imageFilter);
 
         File file = fileChooser.showOpenDialog(null);
-        if (file != null) {
-            try {
-                LocalDateTime photoDate = Instant.ofEpochMilli(file.lastModified())
-                                                .atZone(ZoneId.systemDefault())
-                                                .toLocalDateTime()
-                                                .withNano(0);
-
-                // Check if the photo already exists in the album
-                String newPhotoPath = file.getAbsolutePath();
-                boolean isDuplicate = selectedAlbum.getPhotos().stream()
-                                        .anyMatch(photo -> photo.getPath().equals(newPhotoPath));
-
-                if (isDuplicate) {
-                    // Show error alert for duplicate photo
-                    showAlert("Duplicate Photo", "This photo already exists in the album.", Alert.AlertType.ERROR);
-                } else {
-                    // Add the new photo
-                    StorePhoto photo = new StorePhoto(newPhotoPath, photoDate);
-                    selectedAlbum.addPhoto(photo);
-                    admin.saveUsersToFile("src/User-Data/users.dat");
-
-                    loadPhotos(); 
-                }
-
-            } catch (Exception e) {
-                e.printStackTrace();
-                Alert alert = new Alert(Alert.AlertType.ERROR);
-                alert.setTitle("Error");
-                alert.setHeaderText("Cannot Add Photo");
-                alert.setContentText("An error occurred while trying to add the photo.");
-                alert.showAndWait();
-            }}
+        if (file == null) {
+            return;
+        }
 
+        // The file is copied and its header read in the background, as in a folder import
+        Album album = selectedAlbum;
+        Task<StorePhoto> task = new Task<StorePhoto>() {
+            @Override
+            protected StorePhoto call() {
+                // In managed library mode the photo is the store's copy, so identical files match
+                StorePhoto photo = StorePhoto.fromFile(BlobStore.importFile(file));
+                ThumbnailCache.getInstance().prepare(photo.getPath(), ThumbnailCache.LIST_HEIGHT);
+                return photo;
+            }
+        };
+        task.setOnSucceeded(event -> {
+            StorePhoto photo = task.getValue();
+            // Check if the photo already exists in the album
+            if (album.getPhotoByPath(photo.getPath()) != null) {
+                showAlert("Duplicate Photo", "This photo already exists in the album.", Alert.AlertType.ERROR);
+                return;
+            }
+            album.addPhoto(photo);
+            admin.getJournal(currentUser).addPhoto(album, photo);
+        });
+        task.setOnFailed(event -> {
+            System.err.println("Error adding photo: " + task.getException().getMessage());
+            Alert alert = new Alert(Alert.AlertType.ERROR);
+            alert.setTitle("Error");
+            alert.setHeaderText("Cannot Add Photo");
+            alert.setContentText("An error occurred while trying to add the photo.");
+            alert.showAndWait();
+        });
+
+        Thread thread = new Thread(task, "photo-add");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * does logic for when the import folder button is clicked
+     */
+    @FXML
+    private void onImportFolderBtnClicked() {
+        DirectoryChooser directoryChooser = new DirectoryChooser();
+        directoryChooser.setTitle("Import Folder");
+        File folder = directoryChooser.showDialog(null);
+        if (folder == null) {
+            return;
+        }
+
+        // Photos are read in the background and added to the album a batch at a time
+        PhotoImportTask task = new PhotoImportTask(folder, selectedAlbum, admin.getJournal(currentUser));
+
+        ProgressBar progressBar = new ProgressBar();
+        progressBar.setPrefWidth(300);
+        progressBar.progressProperty().bind(task.progressProperty());
+        Label statusLabel = new Label();
+        statusLabel.textProperty().bind(task.messageProperty());
+        Button cancelButton = new Button("Cancel");
+        cancelButton.setOnAction(event -> task.cancel());
+
+        VBox layout = new VBox(10, statusLabel, progressBar, cancelButton);
+        layout.setAlignment(Pos.CENTER);
+        layout.setPadding(new Insets(10));
+        Stage progressStage = new Stage();
+        progressStage.setTitle("Importing Photos");
+        progressStage.setScene(new Scene(layout));
+        progressStage.setOnCloseRequest(event -> task.cancel());
+
+        task.setOnSucceeded(event -> {
+            progressStage.close();
+            showAlert("Import Complete", "Imported " + task.getValue() + " photos.", Alert.AlertType.INFORMATION);
+        });
+        task.setOnCancelled(event -> {
+            progressStage.close();
+            showAlert("Import Cancelled", "The import was cancelled. Photos already imported were kept.", Alert.AlertType.INFORMATION);
+        });
+        task.setOnFailed(event -> {
+            progressStage.close();
+            System.err.println("Error importing photos: " + task.getException().getMessage());
+            showAlert("Import Failed", "An error occurred while importing the folder.", Alert.AlertType.ERROR);
+        });
+
+        Thread thread = new Thread(task, "photo-import");
+        thread.setDaemon(true);
+        thread.start();
+        progressStage.show();
     }
 
     /**
@@ -177,9 +244,10 @@ public class PhotoScreenController {
 
     Optional<ButtonType> result = alert.showAndWait();
     if (result.isPresent() && result.get() == ButtonType.OK) {
-        selectedAlbum.getPhotos().remove(selectedPhoto);
-        admin.saveUsersToFile("src/User-Data/users.dat"); 
-        loadPhotos(); 
+        // Removing the row moves the selection, so keep hold of the photo being deleted
+        StorePhoto photo = selectedPhoto;
+        selectedAlbum.removePhoto(photo);
+        admin.getJournal(currentUser).removePhoto(selectedAlbum, photo);
     }
     }
 
@@ -255,7 +323,7 @@ public class PhotoScreenController {
     
             Tag newTag = new Tag(tagName, tagValue);
             selectedPhoto.addTag(newTag);
-            admin.saveUsersToFile("src/User-Data/users.dat");
+            admin.getJournal(currentUser).addTag(selectedPhoto, newTag);
             
             
         });
@@ -293,7 +361,7 @@ public class PhotoScreenController {
         // If a tag is selected, remove it from the photo
         result.ifPresent(selectedTag -> {
             selectedPhoto.removeTags(selectedTag);
-            admin.saveUsersToFile("src/User-Data/users.dat"); 
+            admin.getJournal(currentUser).removeTag(selectedPhoto, selectedTag);
             
         });
     }
@@ -320,8 +388,7 @@ public class PhotoScreenController {
     Optional<String> result = dialog.showAndWait();
     result.ifPresent(caption -> {
         selectedPhoto.setCaption(caption);
-        admin.saveUsersToFile("src/User-Data/users.dat"); 
-        loadPhotos(); 
+        admin.getJournal(currentUser).setCaption(selectedPhoto);
     });
     }
 
@@ -358,14 +425,13 @@ public class PhotoScreenController {
         // If an album is selected, copy the photo to that album
         result.ifPresent(targetAlbum -> {
 
-            boolean photoExists = targetAlbum.getPhotos().stream()
-                                     .anyMatch(photo -> photo.getPath().equals(selectedPhoto.getPath()));
+            boolean photoExists = targetAlbum.getPhotoByPath(selectedPhoto.getPath()) != null;
 
             if (photoExists) {
                 showAlert("Photo Exists", "This photo already exists in the target album.", Alert.AlertType.WARNING);
             } else {
                 targetAlbum.addPhoto(selectedPhoto);
-                admin.saveUsersToFile("src/User-Data/users.dat"); 
+                admin.getJournal(currentUser).linkPhoto(targetAlbum, selectedPhoto);
                 showAlert("Photo Copied", "The photo was successfully copied to the target album.", Alert.AlertType.INFORMATION);
             }
             
@@ -405,24 +471,23 @@ public class PhotoScreenController {
         // If an album is selected, move the photo to that album
         result.ifPresent(targetAlbum -> {
 
-            boolean photoExists = targetAlbum.getPhotos().stream()
-                                     .anyMatch(photo -> photo.getPath().equals(selectedPhoto.getPath()));
+            boolean photoExists = targetAlbum.getPhotoByPath(selectedPhoto.getPath()) != null;
 
             if (photoExists) {
                 showAlert("Photo Exists", "This photo already exists in the target album.", Alert.AlertType.WARNING);
             } else {
-                 targetAlbum.addPhoto(selectedPhoto);
+                 StorePhoto photo = selectedPhoto;
+                 targetAlbum.addPhoto(photo);
+                 admin.getJournal(currentUser).linkPhoto(targetAlbum, photo);
             // Remove the photo from the current (source) album
-            selectedAlbum.removePhoto(selectedPhoto);
-            admin.saveUsersToFile("src/User-Data/users.dat"); // Save the changes
+            selectedAlbum.removePhoto(photo);
+            admin.getJournal(currentUser).removePhoto(selectedAlbum, photo); // Save the changes
 
             showAlert("Photo moved", "The photo was successfully moved to the target album.", Alert.AlertType.INFORMATION);
             }
 
            
         });
-
-        loadPhotos();
     }
 
     /**
@@ -440,10 +505,17 @@ public class PhotoScreenController {
         Stage photoStage = new Stage();
         photoStage.setTitle("Photo Display");
 
-        // Create an ImageView for the photo
-        ImageView imageView = new ImageView(new Image("file:" + selectedPhoto.getPath()));
-        imageView.setFitWidth(800); // Adjust this to suit the full resolution or the size of the new window
-        imageView.setPreserveRatio(true);
+        // Opens on the smallest rendition that fills the view and sharpens as the user zooms
+        PhotoViewer viewer = new PhotoViewer(selectedPhoto, 800, 600);
+        Button zoomOutButton = new Button("-");
+        Button fitButton = new Button("Fit");
+        Button zoomInButton = new Button("+");
+        zoomOutButton.setOnAction(event -> viewer.zoomOut());
+        fitButton.setOnAction(event -> viewer.fit());
+        zoomInButton.setOnAction(event -> viewer.zoomIn());
+        HBox zoomBox = new HBox(10, zoomOutButton, fitButton, zoomInButton);
+        zoomBox.setAlignment(Pos.CENTER);
+        photoStage.setOnHidden(event -> viewer.dispose());
 
         // Create labels for caption, date-time, and tags
         Label captionLabel = new Label("Caption: " + selectedPhoto.getCaption());
@@ -459,7 +531,7 @@ public class PhotoScreenController {
         Label tagsLabel = new Label("Tags: " + tagsString);
 
         // Layout for the new scene
-        VBox layout = new VBox(10, imageView, captionLabel, dateTimeLabel, tagsLabel);
+        VBox layout = new VBox(10, viewer, zoomBox, captionLabel, dateTimeLabel, tagsLabel);
         layout.setAlignment(Pos.CENTER);
         layout.setPadding(new Insets(10));
 
@@ -488,42 +560,69 @@ public class PhotoScreenController {
 
         // Create ImageView for displaying photos
         ImageView imageView = new ImageView();
-        imageView.setFitWidth(400); // Adjust as needed
+        imageView.setFitWidth(SLIDESHOW_WIDTH);
+        imageView.setFitHeight(SLIDESHOW_HEIGHT);
         imageView.setPreserveRatio(true);
 
         // Buttons for navigating the slideshow
         Button prevButton = new Button("Previous");
         Button nextButton = new Button("Next");
+        ToggleButton playButton = new ToggleButton("Play");
 
-        // Current photo index
-        final int[] photoIndex = {0};
+        // Neighbouring photos are decoded in the background at the slideshow size
+        SlideshowPrefetcher prefetcher = new SlideshowPrefetcher(selectedAlbum.getPhotos(),
+                SLIDESHOW_WIDTH, SLIDESHOW_HEIGHT, SLIDESHOW_PREFETCH);
 
-        // Function to update the image view for the current photo index
-        Consumer<Integer> updateImageView = index -> {
-            StorePhoto currentPhoto = selectedAlbum.getPhotos().get(photoIndex[0]);
-            imageView.setImage(new Image("file:" + currentPhoto.getPath()));
-        };
-
-        // Initial update
-        updateImageView.accept(photoIndex[0]);
+        // Current photo index; the previous image stays up until the requested one is decoded
+        final int[] photoIndex = {0};
+        prefetcher.whenReady(photoIndex[0], imageView::setImage);
 
         // Set button actions
         prevButton.setOnAction(event -> {
             if (photoIndex[0] > 0) {
                 photoIndex[0]--;
-                updateImageView.accept(photoIndex[0]);
+                prefetcher.whenReady(photoIndex[0], imageView::setImage);
             }
         });
 
         nextButton.setOnAction(event -> {
-            if (photoIndex[0] < selectedAlbum.getPhotos().size() - 1) {
+            if (photoIndex[0] < prefetcher.size() - 1) {
                 photoIndex[0]++;
-                updateImageView.accept(photoIndex[0]);
+                prefetcher.whenReady(photoIndex[0], imageView::setImage);
+            }
+        });
+
+        // Auto-advance only moves on once the next photo is decoded, so no frame is blank
+        Timeline autoAdvance = new Timeline(new KeyFrame(SLIDESHOW_INTERVAL, event -> {
+            int next = photoIndex[0] + 1;
+            if (next >= prefetcher.size()) {
+                playButton.setSelected(false);
+                return;
+            }
+            Image image = prefetcher.getIfReady(next);
+            if (image != null) {
+                photoIndex[0] = next;
+                prefetcher.moveTo(next);
+                imageView.setImage(image);
+            }
+        }));
+        autoAdvance.setCycleCount(Animation.INDEFINITE);
+        playButton.selectedProperty().addListener((obs, wasPlaying, playing) -> {
+            if (playing) {
+                playButton.setText("Pause");
+                autoAdvance.play();
+            } else {
+                playButton.setText("Play");
+                autoAdvance.stop();
             }
         });
+        slideshowStage.setOnHidden(event -> {
+            autoAdvance.stop();
+            prefetcher.shutdown();
+        });
 
         // Layout for buttons
-        HBox buttonBox = new HBox(10, prevButton, nextButton);
+        HBox buttonBox = new HBox(10, prevButton, playButton, nextButton);
         buttonBox.setAlignment(Pos.CENTER);
 
         // Main layout
@@ -542,6 +641,7 @@ public class PhotoScreenController {
     @FXML
     private void onGalleryViewBtnClicked(ActionEvent event) {
         // Close the application
+       closeAlbum();
        try {
             FXMLLoader fxmlLoader = new FXMLLoader(getClass().getResource("/Views/UserMainScreen.fxml"));
             Parent root1 = (Parent) fxmlLoader.load();
@@ -563,6 +663,8 @@ public class PhotoScreenController {
     @FXML
     private void onLogoutBtnClicked(ActionEvent event) {
         // Logout user and show login screen
+        PersistenceService.getInstance().flush();
+        closeAlbum();
         // Load the Delete User screen
         try {
             FXMLLoader fxmlLoader = new FXMLLoader(getClass().getResource("/Views/LoginView.fxml"));
@@ -579,17 +681,25 @@ public class PhotoScreenController {
         }
     }
 
+    /**
+     * Stops following changes to the selected album once the screen is left.
+     */
+    private void closeAlbum() {
+        if (selectedAlbum != null) {
+            selectedAlbum.removeListener(albumListener);
+        }
+    }
+
     /**
      * Loads photos from the selected album into the list view.
+     * Later changes to the album are applied row by row by {@link PhotoListUpdater}.
      */
     private void loadPhotos() {
         PhotoListView.getItems().clear(); 
 
         if (selectedAlbum != null && selectedAlbum.getPhotos() != null && !selectedAlbum.getPhotos().isEmpty()) {
-            for (StorePhoto photo : selectedAlbum.getPhotos()) {
-                Node photoView = createPhotoViewWithCaption(photo);
-                PhotoListView.getItems().add(photoView);
-            }
+            // Cells are only built for the visible rows
+            PhotoListView.getItems().setAll(selectedAlbum.getPhotos());
         } else {
             Label noPhotosLabel = new Label("No Photos Available");
             PhotoListView.setPlaceholder(noPhotosLabel);
@@ -602,47 +712,46 @@ public class PhotoScreenController {
     private void setupListView() {
 
     // Configure ListView properties
-    PhotoListView.setCellFactory(lv -> new ListCell<Node>() {
-        @Override
-        protected void updateItem(Node item, boolean empty) {
-            super.updateItem(item, empty);
-            if (empty || item == null) {
-                setGraphic(null);
-            } else {
-                
-                setGraphic(item);
-                }
-            }
-        });
+    PhotoListView.setCellFactory(lv -> new PhotoListCell());
+    PhotoListView.getSelectionModel().selectedItemProperty().addListener((obs, oldPhoto, photo) -> selectedPhoto = photo);
 
     }
-    
+
     /**
-     * Creates a Node that contains a photo view with its caption.
-     *
-     * @param photo The photo to be displayed
-     * @return A Node containing the photo view and caption
+     * Applies each change to the selected album as a single-row change to the list,
+     * so only the affected cell is updated and the other thumbnails stay as they are.
      */
-    private Node createPhotoViewWithCaption(StorePhoto photo) 
-    {
-        ImageView imageView = new ImageView(new Image("file:" + photo.getPath()));
-        imageView.setFitHeight(100); 
-        imageView.setPreserveRatio(true);
-        
-        Label captionLabel = new Label(photo.getCaption());
-        captionLabel.setWrapText(true);
-
-        VBox container = new VBox(5, imageView, captionLabel); 
-        container.setPadding(new Insets(10)); 
-        container.setAlignment(Pos.CENTER); 
-        
-        container.setOnMouseClicked(event -> {
-            PhotoListView.getSelectionModel().clearSelection();
-            PhotoListView.getSelectionModel().select(container);
-            selectedPhoto = photo; 
-        });
+    private class PhotoListUpdater implements AlbumListener {
+
+        @Override
+        public void photoAdded(Album album, int index, StorePhoto photo) {
+            PhotoListView.getItems().add(index, photo);
+        }
+
+        @Override
+        public void photosAdded(Album album, int index, List<StorePhoto> photos) {
+            PhotoListView.getItems().addAll(index, photos);
+        }
 
-    return container;
+        @Override
+        public void photoRemoved(Album album, int index, StorePhoto photo) {
+            PhotoListView.getItems().remove(index);
+        }
+
+        @Override
+        public void photoUpdated(Album album, int index, StorePhoto photo) {
+            // Replacing the row redraws its cell; keep the row selected if it was
+            boolean selected = PhotoListView.getSelectionModel().isSelected(index);
+            PhotoListView.getItems().set(index, photo);
+            if (selected && !PhotoListView.getSelectionModel().isSelected(index)) {
+                PhotoListView.getSelectionModel().select(index);
+            }
+        }
+
+        @Override
+        public void photosReplaced(Album album) {
+            loadPhotos();
+        }
     }
 
     /**
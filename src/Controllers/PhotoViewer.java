@@ -0,0 +1,224 @@
+package Controllers;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import Models.StorePhoto;
+import javafx.beans.binding.Bindings;
+import javafx.concurrent.Task;
+import javafx.geometry.Bounds;
+import javafx.scene.image.ImageView;
+import javafx.scene.layout.Pane;
+import javafx.scene.layout.StackPane;
+import javafx.scene.control.ScrollPane;
+
+/**
+ * Zoomable view of one photo that only decodes the pixels it shows.
+ * It opens on the smallest {@link RenditionStore} rendition that fills the view, moves
+ * to a larger rendition as the user zooms in, and past the largest one lays the
+ * original's full-resolution tiles over the visible part of the photo. Tiles scrolled
+ * out of view are dropped again. The photo's size comes from its recorded dimensions;
+ * for a photo without them the header is read in the background, and until then the
+ * renditions are shown fitted to the view without tiles.
+ */
+public class PhotoViewer extends ScrollPane {
+
+    private static final double ZOOM_STEP = 1.5;
+    private static final double MAX_SCALE = 2.0;
+
+    private final String path;
+    private final int viewWidth;
+    private final int viewHeight;
+    private final ImageView base = new ImageView();
+    private final Pane tileLayer = new Pane();
+    private final Pane canvas = new Pane(base, tileLayer);
+    private final Map<Long, ImageView> tiles = new HashMap<>();
+    private int imageWidth;
+    private int imageHeight;
+    private boolean tiled;
+    private double fitScale;
+    private double scale;
+    private int renditionSize;
+    private boolean disposed;
+
+    /**
+     * Creates a viewer for a photo, fitted to a view size.
+     *
+     * @param photo the photo
+     * @param width the width of the view
+     * @param height the height of the view
+     */
+    public PhotoViewer(StorePhoto photo, int width, int height) {
+        this.path = photo.getPath();
+        this.viewWidth = width;
+        this.viewHeight = height;
+        base.setPreserveRatio(true);
+
+        StackPane holder = new StackPane(canvas);
+        holder.minWidthProperty().bind(Bindings.createDoubleBinding(() -> getViewportBounds().getWidth(), viewportBoundsProperty()));
+        holder.minHeightProperty().bind(Bindings.createDoubleBinding(() -> getViewportBounds().getHeight(), viewportBoundsProperty()));
+        setContent(holder);
+        setPannable(true);
+        setPrefViewportWidth(width);
+        setPrefViewportHeight(height);
+
+        hvalueProperty().addListener((obs, oldValue, newValue) -> updateTiles());
+        vvalueProperty().addListener((obs, oldValue, newValue) -> updateTiles());
+        viewportBoundsProperty().addListener((obs, oldBounds, newBounds) -> updateTiles());
+        setOnScroll(event -> {
+            if (event.isControlDown()) {
+                if (event.getDeltaY() > 0) {
+                    zoomIn();
+                } else if (event.getDeltaY() < 0) {
+                    zoomOut();
+                }
+                event.consume();
+            }
+        });
+        if (photo.getWidth() > 0 && photo.getHeight() > 0) {
+            setImageSize(photo.getWidth(), photo.getHeight(), true);
+        } else {
+            // Zoom only as far as the renditions go unless the header turns out to be readable
+            setImageSize(width, height, false);
+            readDimensions();
+        }
+    }
+
+    /**
+     * Zooms in one step.
+     */
+    public void zoomIn() {
+        setScale(scale * ZOOM_STEP);
+    }
+
+    /**
+     * Zooms out one step.
+     */
+    public void zoomOut() {
+        setScale(scale / ZOOM_STEP);
+    }
+
+    /**
+     * Zooms to fit the whole photo in the view.
+     */
+    public void fit() {
+        setScale(fitScale);
+    }
+
+    /**
+     * Cancels every pending load of the viewer.
+     */
+    public void dispose() {
+        disposed = true;
+        ImageLoader.getInstance().cancel(base);
+        for (ImageView tile : tiles.values()) {
+            ImageLoader.getInstance().cancel(tile);
+        }
+        tiles.clear();
+        tileLayer.getChildren().clear();
+    }
+
+    /**
+     * Sets the pixel size of the photo and fits it to the view again.
+     */
+    private void setImageSize(int width, int height, boolean tiled) {
+        this.imageWidth = width;
+        this.imageHeight = height;
+        this.tiled = tiled;
+        this.fitScale = Math.min(1.0, Math.min((double) viewWidth / width, (double) viewHeight / height));
+        setScale(fitScale);
+    }
+
+    /**
+     * Reads the photo's size from its header off the FX thread, for a photo whose
+     * dimensions were never recorded.
+     */
+    private void readDimensions() {
+        Task<int[]> task = new Task<int[]>() {
+            @Override
+            protected int[] call() {
+                return RenditionStore.getInstance().getDimensions(path);
+            }
+        };
+        task.setOnSucceeded(event -> {
+            int[] dimensions = task.getValue();
+            if (dimensions != null && !disposed) {
+                setImageSize(dimensions[0], dimensions[1], true);
+            }
+        });
+        Thread thread = new Thread(task, "photo-viewer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void setScale(double newScale) {
+        scale = Math.max(fitScale, Math.min(Math.max(MAX_SCALE, fitScale), newScale));
+        double width = imageWidth * scale;
+        double height = imageHeight * scale;
+        canvas.setMinSize(width, height);
+        canvas.setPrefSize(width, height);
+        canvas.setMaxSize(width, height);
+        base.setFitWidth(width);
+        base.setFitHeight(height);
+
+        int size = RenditionStore.sizeFor(Math.max(width, height));
+        int rendition = size > 0 ? size : RenditionStore.SIZES[RenditionStore.SIZES.length - 1];
+        if (rendition != renditionSize) {
+            renditionSize = rendition;
+            ImageLoader.getInstance().loadRendition(base, path, rendition);
+        }
+        updateTiles();
+    }
+
+    /**
+     * Shows the tiles covering the visible part of the photo when zoomed past the
+     * largest rendition, and drops the rest.
+     */
+    private void updateTiles() {
+        Bounds viewport = getViewportBounds();
+        double width = imageWidth * scale;
+        double height = imageHeight * scale;
+        boolean needed = tiled && RenditionStore.sizeFor(Math.max(width, height)) == 0;
+
+        int firstColumn = 0, lastColumn = -1, firstRow = 0, lastRow = -1;
+        if (needed && viewport != null) {
+            double left = getHvalue() * Math.max(0, width - viewport.getWidth());
+            double top = getVvalue() * Math.max(0, height - viewport.getHeight());
+            double tileSize = RenditionStore.TILE_SIZE * scale;
+            firstColumn = (int) (left / tileSize);
+            lastColumn = Math.min((int) ((left + viewport.getWidth()) / tileSize), (imageWidth - 1) / RenditionStore.TILE_SIZE);
+            firstRow = (int) (top / tileSize);
+            lastRow = Math.min((int) ((top + viewport.getHeight()) / tileSize), (imageHeight - 1) / RenditionStore.TILE_SIZE);
+        }
+
+        for (Iterator<Map.Entry<Long, ImageView>> it = tiles.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Long, ImageView> entry = it.next();
+            int column = (int) (entry.getKey() >> 32);
+            int row = (int) (long) entry.getKey();
+            if (column < firstColumn || column > lastColumn || row < firstRow || row > lastRow) {
+                ImageLoader.getInstance().cancel(entry.getValue());
+                tileLayer.getChildren().remove(entry.getValue());
+                it.remove();
+            }
+        }
+
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                long key = ((long) column << 32) | row;
+                ImageView tile = tiles.get(key);
+                if (tile == null) {
+                    tile = new ImageView();
+                    tiles.put(key, tile);
+                    tileLayer.getChildren().add(tile);
+                    ImageLoader.getInstance().loadTile(tile, path, column, row);
+                }
+                int x = column * RenditionStore.TILE_SIZE;
+                int y = row * RenditionStore.TILE_SIZE;
+                tile.relocate(x * scale, y * scale);
+                tile.setFitWidth(Math.min(RenditionStore.TILE_SIZE, imageWidth - x) * scale);
+                tile.setFitHeight(Math.min(RenditionStore.TILE_SIZE, imageHeight - y) * scale);
+            }
+        }
+    }
+}
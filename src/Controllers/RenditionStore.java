@@ -0,0 +1,316 @@
+package Controllers;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import javafx.scene.image.Image;
+
+/**
+ * Disk store of reduced copies of photos for the photo viewer.
+ * Each photo gets renditions whose longer edge is 256, 800 and 1600 pixels, all made from
+ * one subsampled decode the first time any of them is needed. For zooming in past the
+ * largest rendition the original is cut into square tiles at full resolution; a row of
+ * tiles is decoded and stored together the first time one of its tiles is shown.
+ * Files are named after the photo's path, modification time and length, as in
+ * {@link ThumbnailCache}, so an edited photo gets new ones. A photo's renditions, or one
+ * row of its tiles, are generated by one thread at a time; other threads asking for them
+ * meanwhile wait for that thread instead of decoding the photo again.
+ */
+public class RenditionStore {
+
+    /** Longer-edge sizes of the renditions, smallest first. */
+    public static final int[] SIZES = {256, 800, 1600};
+
+    /** Edge length of the full-resolution tiles. */
+    public static final int TILE_SIZE = 512;
+
+    private static RenditionStore instance;
+
+    private final File directory;
+    private final ConcurrentHashMap<String, Future<?>> generating = new ConcurrentHashMap<>();
+
+    private RenditionStore(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Gets the singleton instance of the rendition store.
+     *
+     * @return the rendition store
+     */
+    public static synchronized RenditionStore getInstance() {
+        if (instance == null) {
+            instance = new RenditionStore(new File("src/User-Data/renditions"));
+        }
+        return instance;
+    }
+
+    /**
+     * Picks the smallest rendition with at least a number of pixels along the longer edge.
+     *
+     * @param longEdge the number of pixels needed
+     * @return the rendition size, or 0 if only the original has enough pixels
+     */
+    public static int sizeFor(double longEdge) {
+        for (int size : SIZES) {
+            if (size >= longEdge) {
+                return size;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Reads the pixel size of a photo from its header, without decoding it.
+     *
+     * @param path the path of the photo
+     * @return the width and height, or null if the photo cannot be read
+     */
+    public int[] getDimensions(String path) {
+        try (ImageInputStream in = ImageIO.createImageInputStream(new File(path))) {
+            if (in == null) {
+                return null;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                return new int[] {reader.getWidth(0), reader.getHeight(0)};
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading image size: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Gets a rendition of a photo, generating the renditions if needed.
+     * A photo no larger than the rendition is returned at its own size.
+     *
+     * @param path the path of the photo
+     * @param size one of {@link #SIZES}
+     * @return the rendition
+     */
+    public Image getRendition(String path, int size) {
+        File source = new File(path);
+        File rendition = file(source, "r" + size);
+        if (!rendition.isFile()) {
+            try {
+                generateOnce(key(source) + ".r", () -> generateRenditions(source));
+            } catch (IOException e) {
+                System.err.println("Error creating rendition: " + e.getMessage());
+            }
+        }
+        if (rendition.isFile()) {
+            return new Image(rendition.toURI().toString());
+        }
+        return new Image(source.toURI().toString(), size, size, true, true);
+    }
+
+    /**
+     * Gets a full-resolution tile of a photo, generating its row of tiles if needed.
+     *
+     * @param path the path of the photo
+     * @param column the tile column, from the left
+     * @param row the tile row, from the top
+     * @return the tile, or null if the photo cannot be read
+     */
+    public Image getTile(String path, int column, int row) {
+        File source = new File(path);
+        File tile = file(source, "t" + column + "_" + row);
+        if (!tile.isFile()) {
+            try {
+                generateOnce(key(source) + ".t" + row, () -> generateTileRow(source, row));
+            } catch (IOException e) {
+                System.err.println("Error creating tile: " + e.getMessage());
+            }
+        }
+        return tile.isFile() ? new Image(tile.toURI().toString()) : null;
+    }
+
+    private File file(File source, String suffix) {
+        return new File(directory, key(source) + "." + suffix);
+    }
+
+    private static String key(File source) {
+        return ThumbnailCache.digest(source.getAbsolutePath() + "|" + source.lastModified() + "|" + source.length());
+    }
+
+    /**
+     * Writes some files of a photo.
+     */
+    private interface Generator {
+        void generate() throws IOException;
+    }
+
+    /**
+     * Runs a generator unless the same files are already being generated, in which case
+     * it waits for that run to finish instead.
+     */
+    private void generateOnce(String key, Generator generator) throws IOException {
+        FutureTask<Void> task = new FutureTask<>(() -> {
+            generator.generate();
+            return null;
+        });
+        Future<?> running = generating.putIfAbsent(key, task);
+        if (running == null) {
+            running = task;
+            try {
+                task.run();
+            } finally {
+                generating.remove(key, task);
+            }
+        }
+        try {
+            running.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for " + key);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw (Error) cause;
+        }
+    }
+
+    /**
+     * Decodes a photo once, subsampled to about twice the largest rendition, and writes
+     * every rendition from it.
+     */
+    private void generateRenditions(File source) throws IOException {
+        int largest = SIZES[SIZES.length - 1];
+        BufferedImage decoded = read(source, reader -> {
+            int longEdge = Math.max(reader.getWidth(0), reader.getHeight(0));
+            ImageReadParam param = reader.getDefaultReadParam();
+            int step = Math.max(1, longEdge / (largest * 2));
+            param.setSourceSubsampling(step, step, 0, 0);
+            return param;
+        });
+        if (decoded == null) {
+            return;
+        }
+        // Scale down from the largest rendition to the next, so each step halves at most a few times
+        BufferedImage previous = decoded;
+        for (int i = SIZES.length - 1; i >= 0; i--) {
+            previous = scale(previous, SIZES[i]);
+            write(previous, file(source, "r" + SIZES[i]));
+        }
+    }
+
+    /**
+     * Decodes one full-width band of a photo at full resolution and writes its tiles.
+     */
+    private void generateTileRow(File source, int row) throws IOException {
+        int[] top = new int[1];
+        BufferedImage band = read(source, reader -> {
+            int width = reader.getWidth(0);
+            int height = reader.getHeight(0);
+            top[0] = row * TILE_SIZE;
+            if (top[0] >= height) {
+                return null;
+            }
+            ImageReadParam param = reader.getDefaultReadParam();
+            param.setSourceRegion(new Rectangle(0, top[0], width, Math.min(TILE_SIZE, height - top[0])));
+            return param;
+        });
+        if (band == null) {
+            return;
+        }
+        for (int column = 0; column * TILE_SIZE < band.getWidth(); column++) {
+            int x = column * TILE_SIZE;
+            BufferedImage tile = band.getSubimage(x, 0, Math.min(TILE_SIZE, band.getWidth() - x), band.getHeight());
+            write(tile, file(source, "t" + column + "_" + row));
+        }
+    }
+
+    /**
+     * Picks how to read a photo once its header has been read.
+     */
+    private interface ReadPlan {
+        ImageReadParam plan(ImageReader reader) throws IOException;
+    }
+
+    private static BufferedImage read(File source, ReadPlan plan) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(source)) {
+            if (in == null) {
+                throw new IOException("Cannot open " + source);
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                ImageReadParam param = plan.plan(reader);
+                return param == null ? null : reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Scales an image so its longer edge is at most a size, keeping its aspect ratio.
+     */
+    private static BufferedImage scale(BufferedImage image, int size) {
+        double factor = Math.min(1.0, (double) size / Math.max(image.getWidth(), image.getHeight()));
+        int width = Math.max(1, (int) Math.round(image.getWidth() * factor));
+        int height = Math.max(1, (int) Math.round(image.getHeight() * factor));
+        boolean alpha = image.getColorModel().hasAlpha();
+        BufferedImage scaled = new BufferedImage(width, height, alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = scaled.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(image, 0, 0, width, height, null);
+        } finally {
+            g.dispose();
+        }
+        return scaled;
+    }
+
+    private void write(BufferedImage image, File target) throws IOException {
+        boolean alpha = image.getColorModel().hasAlpha();
+        if (!alpha && image.getType() != BufferedImage.TYPE_INT_RGB) {
+            // The JPEG writer needs a plain RGB raster
+            image = scale(image, Math.max(image.getWidth(), image.getHeight()));
+        }
+        directory.mkdirs();
+        File temp = File.createTempFile("rendition", ".tmp", directory);
+        try {
+            if (!ImageIO.write(image, alpha ? "png" : "jpg", temp)) {
+                throw new IOException("No writer for rendition");
+            }
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            temp.delete();
+        }
+    }
+}
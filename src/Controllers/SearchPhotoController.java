@@ -11,8 +11,6 @@ import Models.User;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
-import javafx.geometry.Insets;
-import javafx.geometry.Pos;
 import javafx.scene.Node;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
@@ -20,9 +18,6 @@ import javafx.scene.control.Alert;
 import javafx.scene.control.Button;
 import javafx.scene.control.Label;
 import javafx.scene.control.TextInputDialog;
-import javafx.scene.image.Image;
-import javafx.scene.image.ImageView;
-import javafx.scene.layout.VBox;
 import javafx.stage.Stage;
 import javafx.scene.control.ListView;
 
@@ -33,7 +28,7 @@ import javafx.scene.control.ListView;
 public class SearchPhotoController {
    
     @FXML
-    private ListView<Node> PhotoListView;
+    private ListView<StorePhoto> PhotoListView;
     
     @FXML
     private Button CreateAlbumBtn, GalleryViewBtn;
@@ -63,45 +58,17 @@ public class SearchPhotoController {
      */
     private void loadPhotos() {
         PhotoListView.getItems().clear(); // Clear the ListView
+        PhotoListView.setCellFactory(lv -> new PhotoListCell());
+        PhotoListView.getSelectionModel().selectedItemProperty().addListener((obs, oldPhoto, photo) -> selectedPhoto = photo);
 
         if (matchingPhotos != null && !matchingPhotos.isEmpty()) {
-            for (StorePhoto photo : matchingPhotos) {
-                Node photoView = createPhotoViewWithCaption(photo);
-                PhotoListView.getItems().add(photoView); // Add the VBox to the ListView
-            }
+            // Cells are only built for the visible rows
+            PhotoListView.getItems().setAll(matchingPhotos);
         } else {
             PhotoListView.setPlaceholder(new Label("No Photos Available")); // Set placeholder for empty list
         }
     }
 
-    /**
-     * Creates a Node that contains a photo view with its caption for display in the ListView.
-     *
-     * @param photo The photo to be displayed
-     * @return A Node containing the photo view and caption
-     */
-    private Node createPhotoViewWithCaption(StorePhoto photo) {
-        
-        ImageView imageView = new ImageView(new Image("file:" + photo.getPath()));
-        imageView.setFitHeight(100); 
-        imageView.setPreserveRatio(true);
-        
-        Label captionLabel = new Label(photo.getCaption());
-        captionLabel.setWrapText(true);
-
-        VBox container = new VBox(5, imageView, captionLabel); 
-        container.setAlignment(Pos.CENTER); 
-        container.setPadding(new Insets(10)); 
-        
-        container.setOnMouseClicked(event -> {
-            PhotoListView.getSelectionModel().clearSelection();
-            PhotoListView.getSelectionModel().select(container);
-            selectedPhoto = photo; 
-        });
-
-        return container;
-    }
-
     /**
      * Handles the action of creating an album from the search results.
      */
@@ -143,8 +110,11 @@ public class SearchPhotoController {
             }
 
             // Add the new album to the user's list of albums
-            currentUser.albums.add(newAlbum);
-            admin.saveUsersToFile("src/User-Data/users.dat");
+            currentUser.addAlbum(newAlbum);
+            admin.getJournal(currentUser).createAlbum(newAlbum.getName());
+            for (StorePhoto photo : newAlbum.getPhotos()) {
+                admin.getJournal(currentUser).linkPhoto(newAlbum, photo);
+            }
             showAlert("Album Created", "A new album has been created with the search results.");
 
             
@@ -0,0 +1,178 @@
+package Controllers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+import javafx.application.Platform;
+import javafx.scene.image.Image;
+import Models.StorePhoto;
+
+/**
+ * Decodes the photos around the current slideshow position ahead of time.
+ * The current photo and up to a fixed number of photos on either side are decoded in
+ * the background at the slideshow's display size, nearest first, and kept in a ring
+ * buffer with one slot per position in that window. Moving on reuses the slots of the
+ * photos that fell out of the window, so stepping forward or back normally finds the
+ * next image already decoded.
+ *
+ * <p>All methods must be called on the FX thread.</p>
+ */
+public class SlideshowPrefetcher {
+
+    private final List<StorePhoto> photos;
+    private final int width;
+    private final int height;
+    private final int radius;
+    private final Slot[] ring;
+    private final ExecutorService pool;
+    private int waitingIndex = -1;
+    private Consumer<Image> waiting;
+
+    /**
+     * Creates a prefetcher for a list of photos.
+     *
+     * @param photos the photos of the slideshow, in order
+     * @param width the width to decode to
+     * @param height the height to decode to
+     * @param radius how many photos to decode on each side of the current one
+     */
+    public SlideshowPrefetcher(List<StorePhoto> photos, int width, int height, int radius) {
+        this.photos = new ArrayList<>(photos);
+        this.width = width;
+        this.height = height;
+        this.radius = radius;
+        this.ring = new Slot[2 * radius + 1];
+        for (int i = 0; i < ring.length; i++) {
+            ring[i] = new Slot();
+        }
+        this.pool = Executors.newFixedThreadPool(2, task -> {
+            Thread thread = new Thread(task, "slideshow-prefetch");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Gets the number of photos in the slideshow.
+     *
+     * @return the photo count
+     */
+    public int size() {
+        return photos.size();
+    }
+
+    /**
+     * Moves the window to a position, starting decodes for the photos now in range.
+     *
+     * @param index the position of the photo being shown
+     */
+    public void moveTo(int index) {
+        for (int distance = 0; distance <= radius; distance++) {
+            prefetch(index + distance);
+            if (distance > 0) {
+                prefetch(index - distance);
+            }
+        }
+    }
+
+    /**
+     * Gets the decoded image at a position if it is ready.
+     *
+     * @param index the position
+     * @return the image, or null if it is not decoded yet
+     */
+    public Image getIfReady(int index) {
+        Slot slot = slotOf(index);
+        return slot == null ? null : slot.image;
+    }
+
+    /**
+     * Moves to a position and passes its image to a callback once it is decoded,
+     * at once if it already is. Only the latest request is kept, so stepping quickly
+     * through the photos shows the last one asked for rather than each one in turn.
+     *
+     * @param index the position
+     * @param callback called on the FX thread with the decoded image
+     */
+    public void whenReady(int index, Consumer<Image> callback) {
+        moveTo(index);
+        Image image = getIfReady(index);
+        if (image != null) {
+            waiting = null;
+            waitingIndex = -1;
+            callback.accept(image);
+        } else {
+            waiting = callback;
+            waitingIndex = index;
+        }
+    }
+
+    /**
+     * Stops all pending decodes. The prefetcher cannot be used afterwards.
+     */
+    public void shutdown() {
+        waiting = null;
+        waitingIndex = -1;
+        for (Slot slot : ring) {
+            if (slot.future != null) {
+                slot.future.cancel(false);
+            }
+        }
+        pool.shutdownNow();
+    }
+
+    private void prefetch(int index) {
+        if (index < 0 || index >= photos.size()) {
+            return;
+        }
+        Slot slot = ring[index % ring.length];
+        if (slot.index == index) {
+            return;
+        }
+        if (slot.future != null) {
+            slot.future.cancel(false);
+        }
+        slot.index = index;
+        slot.image = null;
+        String path = photos.get(index).getPath();
+        slot.future = pool.submit(() -> {
+            Image image = ImageCache.getInstance().getImage(path, width, height);
+            Platform.runLater(() -> loaded(slot, index, image));
+        });
+    }
+
+    private void loaded(Slot slot, int index, Image image) {
+        if (slot.index != index) {
+            return;
+        }
+        slot.image = image;
+        slot.future = null;
+        if (waiting != null && waitingIndex == index) {
+            Consumer<Image> callback = waiting;
+            waiting = null;
+            waitingIndex = -1;
+            callback.accept(image);
+        }
+    }
+
+    private Slot slotOf(int index) {
+        if (index < 0 || index >= photos.size()) {
+            return null;
+        }
+        Slot slot = ring[index % ring.length];
+        return slot.index == index ? slot : null;
+    }
+
+    /**
+     * One position of the ring buffer: the photo it holds and its decode.
+     */
+    private static final class Slot {
+        private int index = -1;
+        private Future<?> future;
+        private Image image;
+    }
+}
@@ -0,0 +1,179 @@
+package Controllers;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import javafx.scene.image.Image;
+
+/**
+ * Disk cache of small thumbnails for the photo lists.
+ * A thumbnail is generated the first time a photo is shown at a given height and is
+ * stored under a name derived from the photo's path, the height and the file's
+ * modification time, so editing or replacing the photo produces a new thumbnail.
+ * Generation decodes the original with ImageIO source subsampling, so only about twice
+ * the thumbnail's pixels are ever decoded. Full-size decodes are left to the display
+ * and slideshow windows.
+ */
+public class ThumbnailCache {
+
+    /** Height of the thumbnails shown in the photo lists. */
+    public static final int LIST_HEIGHT = 100;
+
+    private static ThumbnailCache instance;
+
+    private final File directory;
+
+    private ThumbnailCache(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Gets the singleton instance of the thumbnail cache.
+     *
+     * @return the thumbnail cache
+     */
+    public static synchronized ThumbnailCache getInstance() {
+        if (instance == null) {
+            instance = new ThumbnailCache(new File("src/User-Data/thumbnails"));
+        }
+        return instance;
+    }
+
+    /**
+     * Gets a thumbnail of a photo, generating and storing it if needed.
+     *
+     * @param path the path of the photo
+     * @param height the thumbnail height in pixels
+     * @return the thumbnail
+     */
+    public Image getThumbnail(String path, int height) {
+        File source = new File(path);
+        File thumbnail = prepare(path, height);
+        if (thumbnail != null) {
+            return new Image(thumbnail.toURI().toString());
+        }
+        // Formats ImageIO cannot read are scaled by JavaFX while decoding instead
+        return new Image(source.toURI().toString(), 0, height, true, true);
+    }
+
+    /**
+     * Makes sure the thumbnail of a photo is on disk, without decoding it for display.
+     * Used by imports to have the thumbnails ready before the photos are first shown.
+     *
+     * @param path the path of the photo
+     * @param height the thumbnail height in pixels
+     * @return the thumbnail file, or null if it could not be created
+     */
+    public File prepare(String path, int height) {
+        File source = new File(path);
+        File thumbnail = thumbnailFile(source, height);
+        if (!thumbnail.isFile()) {
+            try {
+                generate(source, height, thumbnail);
+            } catch (IOException e) {
+                System.err.println("Error creating thumbnail: " + e.getMessage());
+            }
+        }
+        return thumbnail.isFile() ? thumbnail : null;
+    }
+
+    /**
+     * Gets the cache file for a photo at a height.
+     *
+     * @param source the photo file
+     * @param height the thumbnail height
+     * @return the file the thumbnail is stored in
+     */
+    File thumbnailFile(File source, int height) {
+        String key = source.getAbsolutePath() + "|" + height + "|" + source.lastModified() + "|" + source.length();
+        return new File(directory, digest(key) + ".thumb");
+    }
+
+    /**
+     * Hashes a cache key into a file name.
+     *
+     * @param key the key
+     * @return the SHA-256 of the key in hexadecimal
+     */
+    static String digest(String key) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            StringBuilder name = new StringBuilder();
+            for (byte b : digest.digest(key.getBytes(StandardCharsets.UTF_8))) {
+                name.append(String.format("%02x", b));
+            }
+            return name.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Decodes a photo at reduced resolution, scales it to the height and writes it.
+     *
+     * @param source the photo file
+     * @param height the thumbnail height
+     * @param target the file to write the thumbnail to
+     * @throws IOException if the photo cannot be read or the thumbnail cannot be written
+     */
+    private void generate(File source, int height, File target) throws IOException {
+        BufferedImage decoded;
+        try (ImageInputStream in = ImageIO.createImageInputStream(source)) {
+            if (in == null) {
+                throw new IOException("Cannot open " + source);
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                return;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                // Skip rows and columns while decoding, keeping at least twice the target height
+                int step = Math.max(1, reader.getHeight(0) / (height * 2));
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(step, step, 0, 0);
+                decoded = reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+
+        int width = Math.max(1, (int) Math.round(decoded.getWidth() * (double) height / decoded.getHeight()));
+        boolean alpha = decoded.getColorModel().hasAlpha();
+        BufferedImage scaled = new BufferedImage(width, height, alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = scaled.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            g.drawImage(decoded, 0, 0, width, height, null);
+        } finally {
+            g.dispose();
+        }
+
+        directory.mkdirs();
+        File temp = File.createTempFile("thumb", ".tmp", directory);
+        try {
+            if (!ImageIO.write(scaled, alpha ? "png" : "jpg", temp)) {
+                throw new IOException("No writer for thumbnail");
+            }
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            temp.delete();
+        }
+    }
+}
@@ -1,18 +1,34 @@
 package Models;
 
 import java.io.*;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 /**
  * Represents the admin functionality of the photo storage application.
  * This includes managing users and persisting user data.
+ * User data is stored as a small index of usernames plus one shard per user,
+ * so only the users that actually log in are ever loaded.
  */
-public class Admin implements Serializable {
+public class Admin implements Serializable, Flushable {
     private static final long serialVersionUID = 1L;
     private static Admin admin;
-    private transient List<User> users;
+    private transient Map<String, User> users;
+    private transient Map<String, Journal> journals;
+    private transient List<Journal> deletedShards;
+    private transient volatile List<String> indexSnapshot;
+    private transient File dataDir;
 
     /**
      * Gets the singleton singletonInstance of Admin.
@@ -21,7 +37,9 @@ public class Admin implements Serializable {
      * @return the singleton Admin instance
      */
     public Admin() {
-        this.users = new ArrayList<>();
+        this.users = new LinkedHashMap<>();
+        this.journals = new HashMap<>();
+        this.deletedShards = new ArrayList<>();
     }
 
     
@@ -41,79 +59,231 @@ public class Admin implements Serializable {
      * @param username the username of the user to add
      */
     public void addUser(String username) {
-        if (getUserByUsername(username).isEmpty()) {
-            users.add(new User(username));
-        } else {
-            
+        if (!users.containsKey(username)) {
+            User user = new User(username);
+            users.put(username, user);
+            if (dataDir != null) {
+                Journal journal = new Journal(shardFile(username), username);
+                journal.create(user);
+                journals.put(username, journal);
+                indexChanged();
+            }
         }
     }
 
     /**
      * Deletes a user with the specified username.
+     * The user's shard is removed from disk by the persistence service.
      *
      * @param username the username of the user to delete
      */
     public void deleteUser(String username) {
-        users.removeIf(user -> user.getUsername().equals(username));
-            
+        if (!users.containsKey(username)) {
+            return;
+        }
+        users.remove(username);
+        if (dataDir != null) {
+            Journal journal = journals.remove(username);
+            if (journal == null) {
+                journal = new Journal(shardFile(username), username);
+            }
+            journal.close();
+            synchronized (deletedShards) {
+                deletedShards.add(journal);
+            }
+            indexChanged();
+        }
+    }
+
+    /**
+     * Checks whether a user exists without loading their albums.
+     *
+     * @param username the username to look for
+     * @return true if the user exists
+     */
+    public boolean hasUser(String username) {
+        return users.containsKey(username);
     }
 
     /**
      * Gets a user by their username.
+     * The user's albums are loaded from their shard the first time they are requested.
      *
      * @param username the username of the user to find
      * @return an Optional containing the user if found, or an empty Optional otherwise
      */
     public Optional<User> getUserByUsername(String username) {
-        return users.stream()
-                    .filter(user -> user.getUsername().equals(username))
-                    .findFirst();
+        if (!users.containsKey(username)) {
+            return Optional.empty();
+        }
+        User user = users.get(username);
+        if (user == null) {
+            Journal journal = new Journal(shardFile(username), username);
+            user = journal.load();
+            users.put(username, user);
+            journals.put(username, journal);
+        }
+        return Optional.of(user);
     }
 
     /**
-     * Gets a list of all users.
+     * Gets the usernames of all users without loading their albums.
      *
-     * @return a list of users
+     * @return a read-only view of the usernames, in the order the users were added
      */
-    public List<User> getUsers() {
-        return new ArrayList<>(users); 
+    public Set<String> getUsernames() {
+        return Collections.unmodifiableSet(users.keySet());
     }
 
     /**
-     * Saves the list of users to a file.
+     * Gets all users.
+     * The first call loads every user's shard that is not loaded yet, so prefer
+     * {@link #getUsernames()} where only the names are needed.
      *
-     * @param filename the name of the file to save to
+     * @return a read-only view of the users, in the order they were added
      */
-    public void saveUsersToFile(String filename) {
-        try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(filename))) {
-            out.writeObject(users);
+    public Collection<User> getUsers() {
+        if (users.containsValue(null)) {
+            for (String username : new ArrayList<>(users.keySet())) {
+                getUserByUsername(username);
+            }
+        }
+        return Collections.unmodifiableCollection(users.values());
+    }
+
+    /**
+     * Gets the journal that edits to a user's albums are recorded in.
+     *
+     * @param user a loaded user
+     * @return the user's journal, or null if no user data has been loaded
+     */
+    public Journal getJournal(User user) {
+        return journals.get(user.getUsername());
+    }
+
+    /**
+     * Writes a full snapshot of every loaded user and the user index.
+     * This runs on the calling thread; regular edits go through the journals instead.
+     */
+    public void saveUsers() {
+        for (Journal journal : journals.values()) {
+            journal.rewrite();
+        }
+        indexSnapshot = new ArrayList<>(users.keySet());
+        try {
+            flush();
         } catch (IOException err) {
             System.err.println("Error saving users: " + err.getMessage());
         }
     }
 
     /**
-     * Loads the users from a file.
+     * Loads the user index from a data directory.
+     * Only usernames are read here; each user's albums are loaded from their own shard
+     * when the user is first requested. A data directory that still holds a single
+     * users.dat file from before sharding is migrated on the first load.
      *
-     * @param fname the name of the file to load from
+     * @param dir the data directory to load from
      */
-    @SuppressWarnings("unchecked")
-    public void loadUsers(String fname) {
-        File file = new File(fname);
-        if (!file.exists() || file.length() == 0) {
-            return; 
+    public void loadUsers(String dir) {
+        dataDir = new File(dir);
+        users.clear();
+        journals.clear();
+
+        File index = new File(dataDir, "users.idx");
+        if (index.exists()) {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(index)))) {
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    users.put(in.readUTF(), null);
+                }
+            } catch (IOException error) {
+                System.err.println("Error loading users: " + error.getMessage());
+            }
+            return;
         }
 
-        try (ObjectInputStream in = new ObjectInputStream(new FileInputStream(file))) {
+        File legacy = new File(dataDir, "users.dat");
+        if (legacy.exists() && legacy.length() > 0) {
+            migrate(legacy);
+        }
+    }
+
+    /**
+     * Splits a users.dat file written before sharding into one shard per user.
+     * The old file is left in place; the new index takes precedence on later loads.
+     *
+     * @param legacy the users.dat file
+     */
+    @SuppressWarnings("unchecked")
+    private void migrate(File legacy) {
+        try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(legacy)))) {
             Object obj = in.readObject();
             if (obj instanceof List) {
-                this.users = (List<User>) obj;
+                for (User user : (List<User>) obj) {
+                    Journal journal = new Journal(shardFile(user.getUsername()), user.getUsername());
+                    journal.create(user);
+                    users.put(user.getUsername(), user);
+                    journals.put(user.getUsername(), journal);
+                }
             }
         } catch (EOFException error) {
             System.err.println("End of file reached unexpectedly: " + error.getMessage());
         } catch (IOException | ClassNotFoundException error) {
             System.err.println("Error loading users: " + error.getMessage());
         }
+        saveUsers();
+    }
+
+    /**
+     * Writes the user index and removes the shards of deleted users.
+     * Called by the persistence service on its writer thread.
+     *
+     * @throws IOException if the index cannot be written
+     */
+    @Override
+    public void flush() throws IOException {
+        List<Journal> deleted;
+        synchronized (deletedShards) {
+            deleted = new ArrayList<>(deletedShards);
+            deletedShards.clear();
+        }
+        for (Journal journal : deleted) {
+            journal.delete();
+        }
+
+        List<String> names = indexSnapshot;
+        if (names == null || dataDir == null) {
+            return;
+        }
+        dataDir.mkdirs();
+        File index = new File(dataDir, "users.idx");
+        File tmp = new File(dataDir, "users.idx.tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(names.size());
+            for (String name : names) {
+                out.writeUTF(name);
+            }
+        }
+        Files.move(tmp.toPath(), index.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Queues a write of the user index after a user was added or deleted.
+     */
+    private void indexChanged() {
+        indexSnapshot = new ArrayList<>(users.keySet());
+        PersistenceService.getInstance().markDirty(this);
+    }
+
+    /**
+     * Gets the snapshot file of a user's shard.
+     *
+     * @param username the user the shard belongs to
+     * @return the shard's snapshot file
+     */
+    private File shardFile(String username) {
+        return new File(dataDir, "users/" + URLEncoder.encode(username, StandardCharsets.UTF_8) + ".dat");
     }
     
     /**
@@ -123,8 +293,8 @@ public class Admin implements Serializable {
      */
     public String listUsers(){
         StringBuilder sb = new StringBuilder("Users:\n");
-        for (User user: users){
-            sb.append(user.getUsername()).append("\n");
+        for (String username : users.keySet()){
+            sb.append(username).append("\n");
         }
         return sb.toString();
     }
@@ -2,6 +2,9 @@ package Models;
 import java.io.Serializable;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
 
 import java.util.Objects;
 import java.util.List;
@@ -16,6 +19,10 @@ public class Album implements Serializable{
     private static final long serialVersionUID = -3753195309277241711L;
     public String name;
     public List<StorePhoto> photos;
+    private AlbumSummary summary;
+    transient User owner;
+    private transient List<AlbumListener> listeners;
+    private transient Map<StorePhoto, Integer> rows;
 
     /**
      * Constructs a new Album with the specified name.
@@ -25,6 +32,7 @@ public class Album implements Serializable{
     public Album(String name){
         this.name = name;
         this.photos = new ArrayList<>();
+        this.summary = new AlbumSummary();
     }
     
     /**
@@ -34,8 +42,52 @@ public class Album implements Serializable{
      */
     public void addPhoto(StorePhoto photo){
         photos.add(photo);
+        if (rows != null) {
+            rows.putIfAbsent(photo, photos.size() - 1);
+        }
+        if (summary != null) {
+            summary.photoAdded(photo);
+        }
+        if (owner != null) {
+            owner.photoAdded(this, photo);
+        }
+        if (listeners != null) {
+            int index = photos.size() - 1;
+            for (AlbumListener listener : new ArrayList<>(listeners)) {
+                listener.photoAdded(this, index, photo);
+            }
+        }
     }
     
+    /**
+     * Adds several photos to the end of the album, telling listeners once for all of them.
+     *
+     * @param added the photos to add, in order
+     */
+    public void addPhotos(List<StorePhoto> added){
+        int index = photos.size();
+        photos.addAll(added);
+        if (rows != null) {
+            for (int i = index; i < photos.size(); i++) {
+                rows.putIfAbsent(photos.get(i), i);
+            }
+        }
+        if (summary != null) {
+            for (StorePhoto photo : added) {
+                summary.photoAdded(photo);
+            }
+        }
+        if (owner != null) {
+            owner.photosAdded(this, added);
+        }
+        if (listeners != null && !added.isEmpty()) {
+            List<StorePhoto> view = Collections.unmodifiableList(new ArrayList<>(added));
+            for (AlbumListener listener : new ArrayList<>(listeners)) {
+                listener.photosAdded(this, index, view);
+            }
+        }
+    }
+
     /**
      * Removes a photo from the album.
      *
@@ -43,7 +95,137 @@ public class Album implements Serializable{
      * @return true if the photo was removed successfully, false otherwise
      */
     public boolean removePhoto(StorePhoto photo){
-        return photos.remove(photo);
+        int index = photos.indexOf(photo);
+        if (index < 0) {
+            return false;
+        }
+        photos.remove(index);
+        rows = null;
+        if (summary != null) {
+            summary.photoRemoved(photo);
+        }
+        if (owner != null) {
+            owner.photoRemoved(this, photo);
+        }
+        if (listeners != null) {
+            for (AlbumListener listener : new ArrayList<>(listeners)) {
+                listener.photoRemoved(this, index, photo);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether the album holds a photo. For an album of a user this looks the
+     * photo up in the user's photo registry instead of scanning the album.
+     *
+     * @param photo the photo to look for
+     * @return true if the album holds the photo
+     */
+    public boolean contains(StorePhoto photo){
+        return owner != null ? owner.isInAlbum(this, photo) : photos.contains(photo);
+    }
+
+    /**
+     * Finds the album's photo of a file. For an album of a user this looks the path
+     * up in the user's photo registry instead of scanning the album.
+     *
+     * @param path the path of the file
+     * @return the photo, or null if the album has no photo of that file
+     */
+    public StorePhoto getPhotoByPath(String path){
+        if (owner != null) {
+            return owner.findPhoto(this, path);
+        }
+        for (StorePhoto photo : photos) {
+            if (photo.getPath().equals(path)) {
+                return photo;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Registers a listener to be told about changes to the album's photos.
+     *
+     * @param listener the listener to add
+     */
+    public void addListener(AlbumListener listener){
+        if (listeners == null) {
+            listeners = new ArrayList<>();
+        }
+        listeners.add(listener);
+    }
+
+    /**
+     * Unregisters a listener added with {@link #addListener(AlbumListener)}.
+     *
+     * @param listener the listener to remove
+     */
+    public void removeListener(AlbumListener listener){
+        if (listeners != null) {
+            listeners.remove(listener);
+            if (listeners.isEmpty()) {
+                listeners = null;
+            }
+        }
+    }
+
+    /**
+     * Updates the album's summary after the date of one of its photos changed.
+     * Called by the owning user.
+     *
+     * @param photo the re-dated photo
+     * @param oldDate the date before the change
+     */
+    void dateChanged(StorePhoto photo, LocalDateTime oldDate){
+        if (summary != null) {
+            summary.dateChanged(oldDate, photo.getDateTaken());
+        }
+    }
+
+    /**
+     * Tells the listeners that a photo's caption, date or tags changed.
+     * Called by the owning user for the albums holding the photo; only albums being
+     * listened to look up its row.
+     *
+     * @param photo the changed photo
+     */
+    void photoUpdated(StorePhoto photo){
+        if (listeners == null) {
+            return;
+        }
+        int index = rowOf(photo);
+        if (index < 0) {
+            return;
+        }
+        for (AlbumListener listener : new ArrayList<>(listeners)) {
+            listener.photoUpdated(this, index, photo);
+        }
+    }
+
+    /**
+     * Finds the row of a photo through a map from photos to rows. The map is built the
+     * first time it is needed, kept up to date as photos are appended, and dropped when
+     * rows move. Since the photo list can also be changed directly, a row found in the
+     * map is checked, and the map is rebuilt if it is out of date.
+     *
+     * @param photo the photo
+     * @return the photo's row, or -1 if the album does not hold it
+     */
+    private int rowOf(StorePhoto photo){
+        if (rows != null) {
+            Integer row = rows.get(photo);
+            if (row != null && row < photos.size() && photos.get(row) == photo) {
+                return row;
+            }
+        }
+        rows = new IdentityHashMap<>(photos.size() * 2);
+        for (int i = 0; i < photos.size(); i++) {
+            rows.putIfAbsent(photos.get(i), i);
+        }
+        Integer row = rows.get(photo);
+        return row == null ? -1 : row;
     }
     
     /**
@@ -61,7 +243,11 @@ public class Album implements Serializable{
      * @param name the new name of the album
      */
     public void setName(String name){
+        String oldName = this.name;
         this.name = name;
+        if (owner != null) {
+            owner.albumRenamed(this, oldName);
+        }
     }
     
     /**
@@ -79,7 +265,20 @@ public class Album implements Serializable{
      * @param photos the list of photos to set
      */
     public void setPhotos(List<StorePhoto> photos){
+        if (owner != null) {
+            for (StorePhoto photo : this.photos) {
+                owner.photoRemoved(this, photo);
+            }
+            owner.photosAdded(this, photos);
+        }
         this.photos = photos;
+        this.summary = null;
+        this.rows = null;
+        if (listeners != null) {
+            for (AlbumListener listener : new ArrayList<>(listeners)) {
+                listener.photosReplaced(this);
+            }
+        }
     }
 
     /**
@@ -98,33 +297,52 @@ public class Album implements Serializable{
         return false;
     }
     /**
-     * Computes the date range of photos in the album.
+     * Gets the date range of photos in the album.
+     * The range is kept up to date as photos change, so no photo is visited.
      * 
      * @return an array of two LocalDateTime objects, where the first element is the earliest date
      *         and the second element is the latest date of the photos in the album.
      *         Returns null if there are no photos in the album.
      */
     public LocalDateTime[] getDate() {
-        if (photos.isEmpty()) {
-        return null;
-            }
+        AlbumSummary current = getSummary();
+        if (photos.isEmpty() || current.getEarliest() == null) {
+            return null;
+        }
+        return new LocalDateTime[] {current.getEarliest(), current.getLatest()};
+    }
 
-            LocalDateTime early = photos.get(0).getDateTaken();
-            LocalDateTime late = photos.get(0).getDateTaken();
-
-            
-            for (StorePhoto photo : photos) {
-                LocalDateTime date = photo.getDateTaken();
-                if (date.isBefore(early)) {
-                    early = date;
-                }
-                if (date.isAfter(late)) {
-                    late = date;
-                }
-            }
-            return new LocalDateTime[] {early, late};
+    /**
+     * Gets the combined size of the files of the album's photos whose size is known.
+     *
+     * @return the size in bytes
+     */
+    public long getTotalBytes() {
+        return getSummary().getTotalBytes();
+    }
+
+    /**
+     * Gets the stable id of the photo that represents the album: its first photo.
+     *
+     * @return the cover photo's id, or 0 if the album is empty
+     */
+    public long getCoverPhotoId() {
+        return photos.isEmpty() ? 0 : photos.get(0).getPhotoId();
+    }
+
+    /**
+     * Gets the album's summary, recomputing it if it went stale or was never saved
+     * with the album.
+     *
+     * @return the summary
+     */
+    public AlbumSummary getSummary() {
+        if (summary == null || summary.isStale()) {
+            summary = new AlbumSummary(photos);
         }
-    
+        return summary;
+    }
+
     /**
      * Gets the count of photos in the album.
      *
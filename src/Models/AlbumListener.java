@@ -0,0 +1,54 @@
+package Models;
+
+import java.util.List;
+
+/**
+ * Receives the changes made to one album's photos as they happen, so a view of
+ * the album can update only the rows that changed. Listeners are registered with
+ * {@link Album#addListener(AlbumListener)} and are not saved with the album.
+ */
+public interface AlbumListener {
+
+    /**
+     * Called after a photo is added to the album.
+     *
+     * @param album the album
+     * @param index the position of the photo in the album
+     * @param photo the added photo
+     */
+    void photoAdded(Album album, int index, StorePhoto photo);
+
+    /**
+     * Called after several photos are added to the end of the album at once.
+     *
+     * @param album the album
+     * @param index the position of the first added photo
+     * @param photos the added photos, in order
+     */
+    void photosAdded(Album album, int index, List<StorePhoto> photos);
+
+    /**
+     * Called after a photo is removed from the album.
+     *
+     * @param album the album
+     * @param index the position the photo had in the album
+     * @param photo the removed photo
+     */
+    void photoRemoved(Album album, int index, StorePhoto photo);
+
+    /**
+     * Called after the caption, date or tags of a photo in the album change.
+     *
+     * @param album the album
+     * @param index the position of the photo in the album
+     * @param photo the changed photo
+     */
+    void photoUpdated(Album album, int index, StorePhoto photo);
+
+    /**
+     * Called after every photo of the album is replaced at once.
+     *
+     * @param album the album
+     */
+    void photosReplaced(Album album);
+}
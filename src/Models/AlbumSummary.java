@@ -0,0 +1,108 @@
+package Models;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Summary of one album's photos kept up to date as photos are added, removed and
+ * re-dated, so an album list can show each album's date range and size without
+ * visiting its photos. Removing the earliest or latest photo cannot be undone in
+ * constant time, so it only marks the summary stale; the album recomputes it the
+ * next time it is read.
+ */
+public class AlbumSummary implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private LocalDateTime earliest;
+    private LocalDateTime latest;
+    private long totalBytes;
+    private boolean stale;
+
+    /**
+     * Creates the summary of an empty album.
+     */
+    AlbumSummary() {
+    }
+
+    /**
+     * Computes the summary of some photos.
+     *
+     * @param photos the album's photos
+     */
+    AlbumSummary(List<StorePhoto> photos) {
+        for (StorePhoto photo : photos) {
+            photoAdded(photo);
+        }
+    }
+
+    /**
+     * Gets the capture time of the album's earliest photo.
+     *
+     * @return the earliest date, or null if the album is empty
+     */
+    public LocalDateTime getEarliest() {
+        return earliest;
+    }
+
+    /**
+     * Gets the capture time of the album's latest photo.
+     *
+     * @return the latest date, or null if the album is empty
+     */
+    public LocalDateTime getLatest() {
+        return latest;
+    }
+
+    /**
+     * Gets the combined size of the files of the album's photos. Photos whose size
+     * was never recorded count as 0, so the files are never looked at.
+     *
+     * @return the size in bytes
+     */
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * Checks whether the summary must be recomputed before it is read.
+     *
+     * @return true after the earliest or latest photo was removed or re-dated
+     */
+    boolean isStale() {
+        return stale;
+    }
+
+    void photoAdded(StorePhoto photo) {
+        totalBytes += photo.getFileSize();
+        extend(photo.getDateTaken());
+    }
+
+    void photoRemoved(StorePhoto photo) {
+        totalBytes -= photo.getFileSize();
+        shrink(photo.getDateTaken());
+    }
+
+    void dateChanged(LocalDateTime oldDate, LocalDateTime newDate) {
+        shrink(oldDate);
+        extend(newDate);
+    }
+
+    private void extend(LocalDateTime date) {
+        if (date == null || stale) {
+            return;
+        }
+        if (earliest == null || date.isBefore(earliest)) {
+            earliest = date;
+        }
+        if (latest == null || date.isAfter(latest)) {
+            latest = date;
+        }
+    }
+
+    private void shrink(LocalDateTime date) {
+        if (date != null && (date.equals(earliest) || date.equals(latest))) {
+            stale = true;
+        }
+    }
+}
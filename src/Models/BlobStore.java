@@ -0,0 +1,246 @@
+package Models;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Content-addressed store of photo files for the managed library mode.
+ * Each imported file is copied to a path derived from the SHA-256 of its bytes, so
+ * identical files imported under different names end up as one file, and every photo
+ * made from them shares that path, its thumbnail and its cached images. Hashes are
+ * remembered by source path, size and modification time in hashes.idx, so importing a
+ * file again does not read it again. All methods are safe to call from several threads
+ * at once, so imports can hash files in parallel.
+ */
+public class BlobStore implements Flushable {
+
+    private static BlobStore instance;
+    private static volatile boolean managed;
+
+    private final File directory;
+    private final File index;
+    private final Map<String, HashEntry> hashes = new ConcurrentHashMap<>();
+
+    private BlobStore(File directory) {
+        this.directory = directory;
+        this.index = new File(directory, "hashes.idx");
+        loadHashes();
+    }
+
+    /**
+     * Gets the singleton instance of the blob store.
+     *
+     * @return the blob store
+     */
+    public static synchronized BlobStore getInstance() {
+        if (instance == null) {
+            instance = new BlobStore(new File("src/User-Data/library"));
+        }
+        return instance;
+    }
+
+    /**
+     * Checks whether imported photos are copied into the store.
+     *
+     * @return true in managed library mode
+     */
+    public static boolean isManaged() {
+        return managed;
+    }
+
+    /**
+     * Turns the managed library mode on or off. It is off unless the application is
+     * started with {@code --library=managed}.
+     *
+     * @param value true to copy imported photos into the store
+     */
+    public static void setManaged(boolean value) {
+        managed = value;
+    }
+
+    /**
+     * Gets the file to create a photo from when importing a file: the file itself, or in
+     * managed library mode its copy in the store.
+     *
+     * @param source the file being imported
+     * @return the file the photo should point at
+     */
+    public static File importFile(File source) {
+        if (!managed) {
+            return source;
+        }
+        try {
+            return getInstance().store(source);
+        } catch (IOException e) {
+            System.err.println("Error copying photo into library: " + e.getMessage());
+            return source;
+        }
+    }
+
+    /**
+     * Copies a file into the store unless a file with the same contents is already there.
+     * A file hashed before, and not changed since, is not read again.
+     *
+     * @param source the file to store
+     * @return the stored copy
+     * @throws IOException if the file cannot be read or copied
+     */
+    public File store(File source) throws IOException {
+        String cached = cachedHash(source);
+        if (cached != null) {
+            File blob = blobFile(cached, source);
+            if (blob.isFile()) {
+                return blob;
+            }
+        }
+
+        // Hash while copying, so the file is read once
+        File temp = File.createTempFile("blob", ".tmp", directory());
+        try {
+            MessageDigest digest = sha256();
+            try (InputStream in = new DigestInputStream(new FileInputStream(source), digest);
+                 OutputStream out = new FileOutputStream(temp)) {
+                in.transferTo(out);
+            }
+            String hash = hex(digest.digest());
+            remember(source, hash);
+            File blob = blobFile(hash, source);
+            if (!blob.isFile()) {
+                blob.getParentFile().mkdirs();
+                temp.setLastModified(source.lastModified());
+                // Another import of the same contents may have got there first; either copy will do
+                Files.move(temp.toPath(), blob.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            return blob;
+        } finally {
+            temp.delete();
+        }
+    }
+
+    /**
+     * Gets the SHA-256 of a file's contents, reading the file only if it was not hashed
+     * before at its current size and modification time.
+     *
+     * @param source the file
+     * @return the hash in hexadecimal
+     * @throws IOException if the file cannot be read
+     */
+    public String hash(File source) throws IOException {
+        String cached = cachedHash(source);
+        if (cached != null) {
+            return cached;
+        }
+        MessageDigest digest = sha256();
+        try (InputStream in = new DigestInputStream(new FileInputStream(source), digest)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        String hash = hex(digest.digest());
+        remember(source, hash);
+        return hash;
+    }
+
+    /**
+     * Writes the hash cache. Called by the persistence service on its writer thread.
+     *
+     * @throws IOException if the cache cannot be written
+     */
+    @Override
+    public void flush() throws IOException {
+        List<Map.Entry<String, HashEntry>> entries = new ArrayList<>(hashes.entrySet());
+        File tmp = new File(directory(), "hashes.idx.tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(entries.size());
+            for (Map.Entry<String, HashEntry> entry : entries) {
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue().size);
+                out.writeLong(entry.getValue().modified);
+                out.writeUTF(entry.getValue().hash);
+            }
+        }
+        Files.move(tmp.toPath(), index.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private void loadHashes() {
+        if (!index.exists()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(index)))) {
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String path = in.readUTF();
+                hashes.put(path, new HashEntry(in.readLong(), in.readLong(), in.readUTF()));
+            }
+        } catch (IOException error) {
+            System.err.println("Error loading photo hashes: " + error.getMessage());
+        }
+    }
+
+    private String cachedHash(File source) {
+        HashEntry entry = hashes.get(source.getAbsolutePath());
+        if (entry != null && entry.size == source.length() && entry.modified == source.lastModified()) {
+            return entry.hash;
+        }
+        return null;
+    }
+
+    private void remember(File source, String hash) {
+        hashes.put(source.getAbsolutePath(), new HashEntry(source.length(), source.lastModified(), hash));
+        PersistenceService.getInstance().markDirty(this);
+    }
+
+    /**
+     * Gets the store path for a hash: a folder named after its first two digits, and the
+     * source's extension so the file is still recognised as an image.
+     */
+    private File blobFile(String hash, File source) {
+        String name = source.getName();
+        int dot = name.lastIndexOf('.');
+        String extension = dot < 0 ? "" : name.substring(dot).toLowerCase(Locale.ROOT);
+        return new File(new File(directory, hash.substring(0, 2)), hash + extension);
+    }
+
+    private File directory() {
+        directory.mkdirs();
+        return directory;
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder text = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            text.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return text.toString();
+    }
+
+    /**
+     * The hash of a file as it was when it was hashed.
+     */
+    private static final class HashEntry {
+        private final long size;
+        private final long modified;
+        private final String hash;
+
+        HashEntry(long size, long modified, String hash) {
+            this.size = size;
+            this.modified = modified;
+            this.hash = hash;
+        }
+    }
+}
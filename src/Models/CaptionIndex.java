@@ -0,0 +1,245 @@
+package Models;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PrimitiveIterator;
+import java.util.TreeMap;
+
+/**
+ * Full-text index over the captions of one user's photos.
+ * Captions are lower-cased and split into terms of letters and digits; each term keeps
+ * a {@link PhotoBitmap} of the photos using it, in sorted order so a prefix is a range
+ * of terms. Every three-character run of the whole caption is indexed as well, so a
+ * substring of at least three characters is found by intersecting its trigrams and
+ * checking only the photos left over. Kept current by the owning user, like
+ * {@link TagIndex}.
+ */
+public class CaptionIndex {
+
+    private final PhotoRegistry registry;
+    private final TreeMap<String, PhotoBitmap> terms = new TreeMap<>();
+    private final Map<Long, PhotoBitmap> trigrams = new HashMap<>();
+    private final PhotoBitmap captioned = new PhotoBitmap();
+
+    /**
+     * Builds the index for a user's photos.
+     *
+     * @param registry the ids of the distinct photos in the user's albums
+     */
+    public CaptionIndex(PhotoRegistry registry) {
+        this.registry = registry;
+        for (PrimitiveIterator.OfInt it = registry.ids().iterator(); it.hasNext(); ) {
+            photoAdded(registry.get(it.nextInt()));
+        }
+    }
+
+    /**
+     * Indexes the caption of a photo that joined the user's albums.
+     *
+     * @param photo the added photo
+     */
+    public void photoAdded(StorePhoto photo) {
+        index(photo.id, photo.getCaption());
+    }
+
+    /**
+     * Drops the caption of a photo that is no longer in any of the user's albums.
+     *
+     * @param photo the removed photo
+     */
+    public void photoRemoved(StorePhoto photo) {
+        unindex(photo.id, photo.getCaption());
+    }
+
+    /**
+     * Re-indexes a photo after its caption was changed.
+     *
+     * @param photo the photo
+     * @param oldCaption the caption the photo was indexed under
+     */
+    public void captionChanged(StorePhoto photo, String oldCaption) {
+        unindex(photo.id, oldCaption);
+        index(photo.id, photo.getCaption());
+    }
+
+    /**
+     * Finds the photos whose caption contains some text, ignoring case.
+     *
+     * @param text the text to look for
+     * @return the ids of the matching photos
+     */
+    public PhotoBitmap findSubstring(String text) {
+        String needle = text.toLowerCase(Locale.ROOT);
+        PhotoBitmap matches = new PhotoBitmap();
+        for (PrimitiveIterator.OfInt it = candidates(needle).iterator(); it.hasNext(); ) {
+            int id = it.nextInt();
+            if (registry.get(id).getCaption().toLowerCase(Locale.ROOT).contains(needle)) {
+                matches.add(id);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Estimates how many captions contain some text, without checking them.
+     *
+     * @param text the text to look for
+     * @return an upper bound on the number of matching photos
+     */
+    public int estimateSubstring(String text) {
+        return candidates(text.toLowerCase(Locale.ROOT)).cardinality();
+    }
+
+    /**
+     * Finds the photos with a caption term starting with a prefix, ignoring case.
+     *
+     * @param prefix the start of a term
+     * @return the ids of the matching photos
+     */
+    public PhotoBitmap findPrefix(String prefix) {
+        PhotoBitmap matches = new PhotoBitmap();
+        for (PhotoBitmap ids : prefixRange(prefix.toLowerCase(Locale.ROOT)).values()) {
+            matches = matches.or(ids);
+        }
+        return matches;
+    }
+
+    /**
+     * Finds the photos whose captions best match a set of words.
+     * Each query term scores its inverse document frequency on photos using it, so rare
+     * words count for more. The last term also matches as a prefix, at half weight for
+     * longer terms, so results can be shown while the user is still typing.
+     *
+     * @param query the words to search for
+     * @return the matching photos, best match first
+     */
+    public List<StorePhoto> search(String query) {
+        List<String> words = tokenize(query);
+        Map<Integer, Double> scores = new HashMap<>();
+        double total = Math.max(captioned.cardinality(), 1);
+        for (int w = 0; w < words.size(); w++) {
+            String word = words.get(w);
+            Map<String, PhotoBitmap> matches = w == words.size() - 1 ? prefixRange(word) : exact(word);
+            for (Map.Entry<String, PhotoBitmap> entry : matches.entrySet()) {
+                PhotoBitmap ids = entry.getValue();
+                double weight = Math.log(1 + total / ids.cardinality());
+                if (!entry.getKey().equals(word)) {
+                    weight /= 2;
+                }
+                for (PrimitiveIterator.OfInt it = ids.iterator(); it.hasNext(); ) {
+                    scores.merge(it.nextInt(), weight, Double::sum);
+                }
+            }
+        }
+        List<Map.Entry<Integer, Double>> ranked = new ArrayList<>(scores.entrySet());
+        ranked.sort((a, b) -> {
+            int order = Double.compare(b.getValue(), a.getValue());
+            return order != 0 ? order : Integer.compare(a.getKey(), b.getKey());
+        });
+        List<StorePhoto> results = new ArrayList<>(ranked.size());
+        for (Map.Entry<Integer, Double> entry : ranked) {
+            results.add(registry.get(entry.getKey()));
+        }
+        return results;
+    }
+
+    /**
+     * Splits text into lower-case terms of letters and digits.
+     *
+     * @param text the text to split
+     * @return the terms, in order
+     */
+    public static List<String> tokenize(String text) {
+        List<String> words = new ArrayList<>();
+        if (text == null) {
+            return words;
+        }
+        String lower = text.toLowerCase(Locale.ROOT);
+        int start = -1;
+        for (int i = 0; i <= lower.length(); i++) {
+            boolean wordChar = i < lower.length() && Character.isLetterOrDigit(lower.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                words.add(lower.substring(start, i));
+                start = -1;
+            }
+        }
+        return words;
+    }
+
+    /**
+     * Gets the photos that may contain a lower-case text: those having all of its trigrams.
+     */
+    private PhotoBitmap candidates(String needle) {
+        if (needle.length() < 3) {
+            return captioned;
+        }
+        PhotoBitmap matches = null;
+        for (int i = 0; i + 3 <= needle.length(); i++) {
+            PhotoBitmap ids = trigrams.get(trigram(needle, i));
+            if (ids == null) {
+                return new PhotoBitmap();
+            }
+            matches = matches == null ? ids : matches.and(ids);
+        }
+        return matches;
+    }
+
+    private Map<String, PhotoBitmap> exact(String word) {
+        PhotoBitmap ids = terms.get(word);
+        return ids == null ? Map.of() : Map.of(word, ids);
+    }
+
+    private Map<String, PhotoBitmap> prefixRange(String prefix) {
+        return terms.subMap(prefix, true, prefix + Character.MAX_VALUE, false);
+    }
+
+    private void index(int id, String caption) {
+        if (caption == null) {
+            return;
+        }
+        captioned.add(id);
+        for (String word : tokenize(caption)) {
+            terms.computeIfAbsent(word, w -> new PhotoBitmap()).add(id);
+        }
+        String lower = caption.toLowerCase(Locale.ROOT);
+        for (int i = 0; i + 3 <= lower.length(); i++) {
+            trigrams.computeIfAbsent(trigram(lower, i), t -> new PhotoBitmap()).add(id);
+        }
+    }
+
+    private void unindex(int id, String caption) {
+        if (caption == null) {
+            return;
+        }
+        captioned.remove(id);
+        for (String word : tokenize(caption)) {
+            removeFrom(terms, word, id);
+        }
+        String lower = caption.toLowerCase(Locale.ROOT);
+        for (int i = 0; i + 3 <= lower.length(); i++) {
+            removeFrom(trigrams, trigram(lower, i), id);
+        }
+    }
+
+    private static <K> void removeFrom(Map<K, PhotoBitmap> postings, K key, int id) {
+        PhotoBitmap ids = postings.get(key);
+        if (ids != null) {
+            ids.remove(id);
+            if (ids.isEmpty()) {
+                postings.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Packs the three characters starting at an index into one key.
+     */
+    private static long trigram(String text, int index) {
+        return ((long) text.charAt(index) << 32) | ((long) text.charAt(index + 1) << 16) | text.charAt(index + 2);
+    }
+}
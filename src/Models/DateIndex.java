@@ -0,0 +1,222 @@
+package Models;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Index of one user's photos ordered by the date they were taken.
+ * Capture times are kept as epoch seconds in a sorted primitive array next to the photos,
+ * so the earliest and latest dates are read in constant time and a date range is found
+ * with two binary searches. Like {@link TagIndex}, it is kept current by the owning user.
+ */
+public class DateIndex {
+
+    private long[] seconds;
+    private StorePhoto[] photos;
+    private int size;
+
+    /**
+     * Builds the index for a user's photos.
+     *
+     * @param photos the distinct photos in the user's albums
+     */
+    public DateIndex(Collection<StorePhoto> photos) {
+        this.photos = photos.toArray(new StorePhoto[Math.max(photos.size(), 16)]);
+        this.size = photos.size();
+        Arrays.sort(this.photos, 0, size, Comparator.comparing(StorePhoto::getDateTaken));
+        this.seconds = new long[this.photos.length];
+        for (int i = 0; i < size; i++) {
+            seconds[i] = key(this.photos[i].getDateTaken());
+        }
+    }
+
+    /**
+     * Indexes a photo that joined the user's albums.
+     *
+     * @param photo the added photo
+     */
+    public void photoAdded(StorePhoto photo) {
+        LocalDateTime date = photo.getDateTaken();
+        long key = key(date);
+        int index = upperBound(key);
+        // Within one second, keep the photos ordered by their full timestamp
+        while (index > 0 && seconds[index - 1] == key && photos[index - 1].getDateTaken().isAfter(date)) {
+            index--;
+        }
+        if (size == photos.length) {
+            photos = Arrays.copyOf(photos, size * 2);
+            seconds = Arrays.copyOf(seconds, size * 2);
+        }
+        System.arraycopy(photos, index, photos, index + 1, size - index);
+        System.arraycopy(seconds, index, seconds, index + 1, size - index);
+        photos[index] = photo;
+        seconds[index] = key;
+        size++;
+    }
+
+    /**
+     * Indexes several photos that joined the user's albums at once. The photos are sorted
+     * among themselves and merged into the index in one pass, rather than inserted one by
+     * one.
+     *
+     * @param added the added photos
+     */
+    public void photosAdded(Collection<StorePhoto> added) {
+        if (added.size() < 2) {
+            for (StorePhoto photo : added) {
+                photoAdded(photo);
+            }
+            return;
+        }
+        StorePhoto[] batch = added.toArray(new StorePhoto[0]);
+        Arrays.sort(batch, Comparator.comparing(StorePhoto::getDateTaken));
+        int total = size + batch.length;
+        if (total > photos.length) {
+            int capacity = Math.max(total, size * 2);
+            photos = Arrays.copyOf(photos, capacity);
+            seconds = Arrays.copyOf(seconds, capacity);
+        }
+        // Merge from the back, so indexed photos only move once and never over unread ones
+        int i = size - 1;
+        int j = batch.length - 1;
+        for (int k = total - 1; j >= 0; k--) {
+            if (i >= 0 && photos[i].getDateTaken().isAfter(batch[j].getDateTaken())) {
+                photos[k] = photos[i];
+                seconds[k] = seconds[i];
+                i--;
+            } else {
+                photos[k] = batch[j];
+                seconds[k] = key(batch[j].getDateTaken());
+                j--;
+            }
+        }
+        size = total;
+    }
+
+    /**
+     * Drops a photo that is no longer in any of the user's albums.
+     *
+     * @param photo the removed photo
+     */
+    public void photoRemoved(StorePhoto photo) {
+        remove(photo, key(photo.getDateTaken()));
+    }
+
+    /**
+     * Moves a photo after its date was changed.
+     *
+     * @param photo the photo
+     * @param oldDate the date the photo was indexed under
+     */
+    public void dateChanged(StorePhoto photo, LocalDateTime oldDate) {
+        if (remove(photo, key(oldDate))) {
+            photoAdded(photo);
+        }
+    }
+
+    /**
+     * Gets the date of the earliest photo.
+     *
+     * @return the earliest date, or null if there are no photos
+     */
+    public LocalDateTime getEarliest() {
+        return size == 0 ? null : photos[0].getDateTaken();
+    }
+
+    /**
+     * Gets the date of the latest photo.
+     *
+     * @return the latest date, or null if there are no photos
+     */
+    public LocalDateTime getLatest() {
+        return size == 0 ? null : photos[size - 1].getDateTaken();
+    }
+
+    /**
+     * Gets the photos taken within a date range, oldest first.
+     *
+     * @param start the start of the range, inclusive
+     * @param end the end of the range, inclusive
+     * @return the matching photos
+     */
+    public List<StorePhoto> getRange(LocalDateTime start, LocalDateTime end) {
+        int from = lowerBound(key(start));
+        int to = upperBound(key(end));
+        List<StorePhoto> matches = new ArrayList<>(Math.max(to - from, 0));
+        for (int i = from; i < to; i++) {
+            // Only photos in the boundary seconds can fall outside the range
+            LocalDateTime date = photos[i].getDateTaken();
+            if (!date.isBefore(start) && !date.isAfter(end)) {
+                matches.add(photos[i]);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Estimates how many photos were taken within a date range, without collecting them.
+     * Photos in the boundary seconds are counted even if they fall just outside the range.
+     *
+     * @param start the start of the range, inclusive
+     * @param end the end of the range, inclusive
+     * @return the approximate number of matching photos
+     */
+    public int count(LocalDateTime start, LocalDateTime end) {
+        return Math.max(upperBound(key(end)) - lowerBound(key(start)), 0);
+    }
+
+    private boolean remove(StorePhoto photo, long key) {
+        for (int i = lowerBound(key); i < size && seconds[i] == key; i++) {
+            if (photos[i] == photo) {
+                System.arraycopy(photos, i + 1, photos, i, size - i - 1);
+                System.arraycopy(seconds, i + 1, seconds, i, size - i - 1);
+                photos[--size] = null;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds the first position whose key is not less than the given key.
+     */
+    private int lowerBound(long key) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (seconds[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Finds the first position whose key is greater than the given key.
+     */
+    private int upperBound(long key) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (seconds[mid] <= key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static long key(LocalDateTime date) {
+        return date.toEpochSecond(ZoneOffset.UTC);
+    }
+}
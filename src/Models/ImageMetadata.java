@@ -0,0 +1,297 @@
+package Models;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Size, orientation and capture date of a JPEG or PNG file, read from its header alone.
+ * Only the segments before the image data are visited, through a small buffer that
+ * is refilled with positional reads, so large EXIF thumbnails and the pixels are never
+ * read. For a JPEG, the EXIF block gives the orientation and the original capture time,
+ * and the frame header gives the size. For a PNG, the IHDR chunk gives the size and an
+ * eXIf chunk, if any, gives the rest.
+ */
+public final class ImageMetadata {
+
+    private static final int BUFFER_SIZE = 4096;
+    private static final int MAX_IFD_ENTRIES = 1024;
+    private static final DateTimeFormatter EXIF_DATE = DateTimeFormatter.ofPattern("yyyy:MM:dd HH:mm:ss");
+
+    private static final int TAG_ORIENTATION = 0x0112;
+    private static final int TAG_DATE_TIME = 0x0132;
+    private static final int TAG_EXIF_IFD = 0x8769;
+    private static final int TAG_DATE_TIME_ORIGINAL = 0x9003;
+
+    private int width;
+    private int height;
+    private int orientation;
+    private LocalDateTime dateTaken;
+
+    private ImageMetadata() {
+    }
+
+    /**
+     * Reads the metadata of an image file.
+     *
+     * @param path the image file
+     * @return the metadata, or null if the file is not a JPEG or PNG
+     * @throws IOException if the file cannot be read or its header is cut short
+     */
+    public static ImageMetadata read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            Reader reader = new Reader(channel);
+            ImageMetadata metadata = new ImageMetadata();
+            if (reader.u8(0) == 0xFF && reader.u8(1) == 0xD8) {
+                metadata.readJpeg(reader);
+            } else if (reader.u32(0) == 0x89504E47 && reader.u32(4) == 0x0D0A1A0A) {
+                metadata.readPng(reader);
+            } else {
+                return null;
+            }
+            return metadata;
+        }
+    }
+
+    /**
+     * Gets the width of the stored image, before any rotation.
+     *
+     * @return the width in pixels
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Gets the height of the stored image, before any rotation.
+     *
+     * @return the height in pixels
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Gets the EXIF orientation of the image.
+     *
+     * @return the orientation, 1 to 8, or 0 if the file does not say
+     */
+    public int getOrientation() {
+        return orientation;
+    }
+
+    /**
+     * Gets the time the photo was taken, as recorded by the camera.
+     *
+     * @return the capture time, or null if the file does not say
+     */
+    public LocalDateTime getDateTaken() {
+        return dateTaken;
+    }
+
+    private void readJpeg(Reader reader) throws IOException {
+        long position = 2;
+        while (true) {
+            if (reader.u8(position) != 0xFF) {
+                return;
+            }
+            int marker = reader.u8(position + 1);
+            if (marker == 0xFF) {
+                // Fill byte before a marker
+                position++;
+                continue;
+            }
+            if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD7)) {
+                position += 2;
+                continue;
+            }
+            if (marker == 0xDA || marker == 0xD9) {
+                return;
+            }
+            int length = reader.u16(position + 2);
+            if (marker == 0xE1 && length >= 8 && reader.u32(position + 4) == 0x45786966 && reader.u16(position + 8) == 0) {
+                // "Exif\0\0" followed by a TIFF structure
+                readTiff(reader, position + 10, position + 2 + length);
+            } else if (isStartOfFrame(marker)) {
+                height = reader.u16(position + 5);
+                width = reader.u16(position + 7);
+                // The EXIF block always comes before the frame header
+                return;
+            }
+            position += 2 + length;
+        }
+    }
+
+    private static boolean isStartOfFrame(int marker) {
+        return marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC;
+    }
+
+    private void readPng(Reader reader) throws IOException {
+        width = reader.u32(16);
+        height = reader.u32(20);
+        long position = 8;
+        while (true) {
+            long length = reader.u32(position) & 0xFFFFFFFFL;
+            int type = reader.u32(position + 4);
+            if (type == 0x49444154 || type == 0x49454E44) {
+                // IDAT or IEND: no metadata chunks follow the image data that matter here
+                return;
+            }
+            if (type == 0x65584966) {
+                // eXIf
+                readTiff(reader, position + 8, position + 8 + length);
+                return;
+            }
+            position += 12 + length;
+        }
+    }
+
+    /**
+     * Reads the orientation and capture time from an EXIF TIFF structure.
+     *
+     * @param reader the file reader
+     * @param base the position of the TIFF header; offsets in the structure are relative to it
+     * @param end the position just past the structure
+     */
+    private void readTiff(Reader reader, long base, long end) throws IOException {
+        int byteOrder = reader.u16(base);
+        if (byteOrder == 0x4949) {
+            reader.order(ByteOrder.LITTLE_ENDIAN);
+        } else if (byteOrder != 0x4D4D) {
+            return;
+        }
+        try {
+            if (reader.u16(base + 2) != 42) {
+                return;
+            }
+            long exifIfd = -1;
+            String dateTime = null;
+            long ifd = base + (reader.u32(base + 4) & 0xFFFFFFFFL);
+            int entries = ifd + 2 <= end ? reader.u16(ifd) : 0;
+            for (int i = 0; i < Math.min(entries, MAX_IFD_ENTRIES) && ifd + 14 + 12L * i <= end; i++) {
+                long entry = ifd + 2 + 12L * i;
+                int tag = reader.u16(entry);
+                if (tag == TAG_ORIENTATION) {
+                    orientation = reader.u16(entry + 8);
+                } else if (tag == TAG_EXIF_IFD) {
+                    exifIfd = base + (reader.u32(entry + 8) & 0xFFFFFFFFL);
+                } else if (tag == TAG_DATE_TIME) {
+                    dateTime = readAscii(reader, base, entry, end);
+                }
+            }
+
+            String original = null;
+            if (exifIfd >= 0 && exifIfd + 2 <= end) {
+                entries = reader.u16(exifIfd);
+                for (int i = 0; i < Math.min(entries, MAX_IFD_ENTRIES) && exifIfd + 14 + 12L * i <= end; i++) {
+                    long entry = exifIfd + 2 + 12L * i;
+                    if (reader.u16(entry) == TAG_DATE_TIME_ORIGINAL) {
+                        original = readAscii(reader, base, entry, end);
+                        break;
+                    }
+                }
+            }
+            dateTaken = parseDate(original);
+            if (dateTaken == null) {
+                dateTaken = parseDate(dateTime);
+            }
+        } finally {
+            reader.order(ByteOrder.BIG_ENDIAN);
+        }
+    }
+
+    private static String readAscii(Reader reader, long base, long entry, long end) throws IOException {
+        int count = reader.u32(entry + 4);
+        if (count <= 0 || count > 64) {
+            return null;
+        }
+        long start = count <= 4 ? entry + 8 : base + (reader.u32(entry + 8) & 0xFFFFFFFFL);
+        if (start + count > end) {
+            return null;
+        }
+        byte[] bytes = reader.bytes(start, count);
+        int length = 0;
+        while (length < bytes.length && bytes[length] != 0) {
+            length++;
+        }
+        return new String(bytes, 0, length, StandardCharsets.US_ASCII).trim();
+    }
+
+    private static LocalDateTime parseDate(String value) {
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        try {
+            return LocalDateTime.parse(value, EXIF_DATE);
+        } catch (DateTimeParseException e) {
+            // Cameras without a clock write placeholders such as "0000:00:00 00:00:00"
+            return null;
+        }
+    }
+
+    /**
+     * Random access to a file through one small buffer, refilled with positional reads
+     * whenever a read falls outside it.
+     */
+    private static final class Reader {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        private long start = -1;
+
+        Reader(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void order(ByteOrder order) {
+            buffer.order(order);
+        }
+
+        int u8(long position) throws IOException {
+            return buffer.get(fill(position, 1)) & 0xFF;
+        }
+
+        int u16(long position) throws IOException {
+            return buffer.getShort(fill(position, 2)) & 0xFFFF;
+        }
+
+        int u32(long position) throws IOException {
+            return buffer.getInt(fill(position, 4));
+        }
+
+        byte[] bytes(long position, int length) throws IOException {
+            byte[] bytes = new byte[length];
+            int offset = fill(position, length);
+            for (int i = 0; i < length; i++) {
+                bytes[i] = buffer.get(offset + i);
+            }
+            return bytes;
+        }
+
+        /**
+         * Makes sure a range of the file is in the buffer.
+         *
+         * @return the offset of the range within the buffer
+         */
+        private int fill(long position, int length) throws IOException {
+            if (start < 0 || position < start || position + length > start + buffer.limit()) {
+                buffer.clear();
+                while (buffer.position() < length) {
+                    if (channel.read(buffer, position + buffer.position()) < 0) {
+                        throw new EOFException("Image header ends early");
+                    }
+                }
+                buffer.flip();
+                start = position;
+            }
+            return (int) (position - start);
+        }
+    }
+}
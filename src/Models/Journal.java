@@ -0,0 +1,577 @@
+package Models;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Append-only log of the edits a user made since the last snapshot of their shard.
+ * Every mutation is encoded as a small length-prefixed record, so the cost of saving
+ * an edit depends on the size of the edit instead of the size of the user's library.
+ * Records are queued in memory and appended to the journal file by the
+ * {@link PersistenceService} writer thread, so recording an edit never blocks on disk.
+ * The journal is replayed on top of the snapshot when the user is loaded, and the
+ * snapshot is rebuilt (and the journal truncated) once the journal grows past
+ * {@link #COMPACT_THRESHOLD} records.
+ */
+public class Journal implements Flushable {
+
+    /** Number of records after which the snapshot is rewritten and the journal truncated. */
+    public static final int COMPACT_THRESHOLD = 1000;
+
+    private static final byte CREATE_ALBUM = 1;
+    private static final byte RENAME_ALBUM = 2;
+    private static final byte DELETE_ALBUM = 3;
+    private static final byte ADD_PHOTO = 4;
+    private static final byte LINK_PHOTO = 5;
+    private static final byte REMOVE_PHOTO = 6;
+    private static final byte ADD_TAG = 7;
+    private static final byte REMOVE_TAG = 8;
+    private static final byte SET_CAPTION = 9;
+
+    private final File snapshot;
+    private final File file;
+    private final String username;
+    private final Queue<byte[]> pending = new ConcurrentLinkedQueue<>();
+    private User user;
+    private long generation;
+    private int records;
+    private boolean closed;
+
+    /**
+     * Constructs the journal for a user's snapshot file.
+     * The journal itself is kept next to the snapshot with a ".journal" suffix.
+     *
+     * @param snapshot the snapshot file the journal applies to
+     * @param username the user the shard belongs to
+     */
+    public Journal(File snapshot, String username) {
+        this.snapshot = snapshot;
+        this.file = new File(snapshot.getPath() + ".journal");
+        this.username = username;
+    }
+
+    /**
+     * Loads the user from the snapshot and replays the journal on top of it.
+     * A journal written for an older snapshot generation is discarded. If the replay
+     * stops early, at a record that was cut short or cannot be applied, the journal is
+     * cut back to the last record applied, so new records are appended right after it
+     * instead of after the damaged bytes. A journal that cannot be read at all is
+     * closed and nothing more is appended to it.
+     *
+     * @return the loaded user
+     */
+    public synchronized User load() {
+        long[] stored = new long[1];
+        User loaded = readSnapshot(stored);
+        generation = stored[0];
+        records = 0;
+
+        if (readGeneration() == generation) {
+            long end = applyTo(loaded);
+            if (end < 0 || (end < file.length() && !cut(end))) {
+                System.err.println("Error loading user " + username + ": journal cannot be repaired, edits will not be saved");
+                closed = true;
+            }
+        } else if (file.exists()) {
+            truncate(generation);
+        }
+        user = loaded;
+        return loaded;
+    }
+
+    /**
+     * Binds the journal to a user that has not been saved yet.
+     *
+     * @param user the new user
+     */
+    public synchronized void create(User user) {
+        this.user = user;
+        this.generation = 0;
+        this.records = 0;
+    }
+
+    /**
+     * Returns the generation of the snapshot this journal applies to.
+     *
+     * @return the snapshot generation
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Returns the number of records appended since the last snapshot.
+     *
+     * @return the record count
+     */
+    public int size() {
+        return records;
+    }
+
+    /**
+     * Records that an album was created.
+     *
+     * @param albumName the name of the new album
+     */
+    public void createAlbum(String albumName) {
+        append(CREATE_ALBUM, albumName);
+    }
+
+    /**
+     * Records that an album was renamed.
+     *
+     * @param oldName the previous name of the album
+     * @param newName the new name of the album
+     */
+    public void renameAlbum(String oldName, String newName) {
+        append(RENAME_ALBUM, oldName, newName);
+    }
+
+    /**
+     * Records that an album was deleted.
+     *
+     * @param albumName the name of the deleted album
+     */
+    public void deleteAlbum(String albumName) {
+        append(DELETE_ALBUM, albumName);
+    }
+
+    /**
+     * Records that a new photo was added to an album.
+     *
+     * @param album the album the photo was added to
+     * @param photo the new photo
+     */
+    public void addPhoto(Album album, StorePhoto photo) {
+        append(ADD_PHOTO, album.getName(), photo.getPath(), photo.getDateTaken().toString(),
+                Integer.toString(photo.getWidth()), Integer.toString(photo.getHeight()),
+                Integer.toString(photo.getOrientation()), Long.toString(photo.getFileSize()));
+    }
+
+    /**
+     * Records that an existing photo was copied into another album.
+     * The copy shares the photo with the album it was taken from.
+     *
+     * @param target the album the photo was copied to
+     * @param photo the copied photo
+     */
+    public void linkPhoto(Album target, StorePhoto photo) {
+        Album source = locate(photo, target);
+        if (source != null) {
+            append(LINK_PHOTO, source.getName(), target.getName(), photo.getPath());
+        }
+    }
+
+    /**
+     * Records that a photo was removed from an album.
+     *
+     * @param album the album the photo was removed from
+     * @param photo the removed photo
+     */
+    public void removePhoto(Album album, StorePhoto photo) {
+        append(REMOVE_PHOTO, album.getName(), photo.getPath());
+    }
+
+    /**
+     * Records that a tag was added to a photo.
+     *
+     * @param photo the tagged photo
+     * @param tag the added tag
+     */
+    public void addTag(StorePhoto photo, Tag tag) {
+        Album album = locate(photo, null);
+        if (album != null) {
+            append(ADD_TAG, album.getName(), photo.getPath(), tag.getKey(), tag.getVal());
+        }
+    }
+
+    /**
+     * Records that a tag was removed from a photo.
+     *
+     * @param photo the photo
+     * @param tag the removed tag
+     */
+    public void removeTag(StorePhoto photo, Tag tag) {
+        Album album = locate(photo, null);
+        if (album != null) {
+            append(REMOVE_TAG, album.getName(), photo.getPath(), tag.getKey(), tag.getVal());
+        }
+    }
+
+    /**
+     * Records the current caption of a photo.
+     *
+     * @param photo the captioned photo
+     */
+    public void setCaption(StorePhoto photo) {
+        Album album = locate(photo, null);
+        if (album != null) {
+            String caption = photo.getCaption() == null ? "" : photo.getCaption();
+            append(SET_CAPTION, album.getName(), photo.getPath(), caption);
+        }
+    }
+
+    /**
+     * Appends the queued records to the journal file, compacting the journal into a
+     * new snapshot once it has grown past the threshold.
+     */
+    @Override
+    public synchronized void flush() {
+        if (closed || pending.isEmpty()) {
+            return;
+        }
+
+        file.getParentFile().mkdirs();
+        boolean fresh = !file.exists() || file.length() == 0;
+        long start = fresh ? 0 : file.length();
+        int applied = records;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)))) {
+            if (fresh) {
+                out.writeLong(generation);
+            }
+            byte[] record;
+            while ((record = pending.poll()) != null) {
+                out.writeInt(record.length);
+                out.write(record);
+                records++;
+            }
+        } catch (IOException err) {
+            System.err.println("Error appending to journal: " + err.getMessage());
+            // Drop whatever part of the batch was written, so the next append starts on a record boundary
+            records = applied;
+            cut(start);
+            return;
+        }
+
+        if (records >= COMPACT_THRESHOLD) {
+            compact();
+        }
+    }
+
+    /**
+     * Folds the journal into a new snapshot.
+     * The snapshot is rebuilt from the previous snapshot and the journal file rather than
+     * from the live user, so compaction can run on the writer thread while the UI keeps
+     * editing. Nothing is written unless every record in the journal could be applied.
+     */
+    public synchronized void compact() {
+        long[] stored = new long[1];
+        User rebuilt = readSnapshot(stored);
+        if (stored[0] != generation) {
+            return;
+        }
+        long end = applyTo(rebuilt);
+        if (end < 0 || end < file.length()) {
+            System.err.println("Error compacting journal: it holds a damaged record");
+            return;
+        }
+
+        try {
+            writeSnapshot(rebuilt, generation + 1);
+        } catch (IOException err) {
+            System.err.println("Error compacting journal: " + err.getMessage());
+            return;
+        }
+        truncate(generation + 1);
+    }
+
+    /**
+     * Writes a snapshot of the live user and starts a new, empty journal.
+     * Records still queued are dropped since the snapshot already contains them.
+     * This must run on the thread that edits the user.
+     */
+    public synchronized void rewrite() {
+        try {
+            writeSnapshot(user, generation + 1);
+        } catch (IOException err) {
+            System.err.println("Error saving user " + username + ": " + err.getMessage());
+            return;
+        }
+        pending.clear();
+        truncate(generation + 1);
+    }
+
+    /**
+     * Stops the journal from writing anything further, e.g. because its user was deleted.
+     */
+    public synchronized void close() {
+        closed = true;
+        pending.clear();
+    }
+
+    /**
+     * Deletes the snapshot and journal files of the shard.
+     */
+    public synchronized void delete() {
+        close();
+        file.delete();
+        snapshot.delete();
+    }
+
+    /**
+     * Truncates the journal file and writes the header for a new generation.
+     *
+     * @param generation the generation of the current snapshot
+     */
+    private void truncate(long generation) {
+        this.generation = generation;
+        this.records = 0;
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+            out.writeLong(generation);
+        } catch (IOException err) {
+            System.err.println("Error resetting journal: " + err.getMessage());
+        }
+    }
+
+    /**
+     * Cuts the journal file back to a length, dropping a damaged or partly written tail.
+     *
+     * @param length the length to keep
+     * @return true if the file was cut
+     */
+    private boolean cut(long length) {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            channel.truncate(length);
+            return true;
+        } catch (IOException err) {
+            System.err.println("Error repairing journal: " + err.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Reads the user stored in the snapshot file.
+     * Shards written with Java serialization before {@link PhotoCodec} existed are still
+     * read, and are converted the next time the snapshot is rewritten.
+     *
+     * @param generation receives the generation stored in the snapshot, or 0 if there is none
+     * @return the stored user, or a new empty user if there is no snapshot yet
+     */
+    private User readSnapshot(long[] generation) {
+        generation[0] = 0;
+        if (!snapshot.exists() || snapshot.length() == 0) {
+            return new User(username);
+        }
+
+        try (InputStream in = new BufferedInputStream(new FileInputStream(snapshot), 1 << 16)) {
+            if (!PhotoCodec.isSerialized(in)) {
+                return PhotoCodec.read(in, generation);
+            }
+            ObjectInputStream legacy = new ObjectInputStream(in);
+            User stored = (User) legacy.readObject();
+            generation[0] = legacy.readLong();
+            return stored;
+        } catch (IOException | ClassNotFoundException | ClassCastException error) {
+            System.err.println("Error loading user " + username + ": " + error.getMessage());
+            return new User(username);
+        }
+    }
+
+    /**
+     * Writes a snapshot of a user to the snapshot file.
+     * The snapshot is written to a temporary file first so a failed save never leaves
+     * a truncated shard behind.
+     *
+     * @param user the user to write
+     * @param generation the generation to store in the snapshot
+     * @throws IOException if the snapshot cannot be written
+     */
+    private void writeSnapshot(User user, long generation) throws IOException {
+        snapshot.getParentFile().mkdirs();
+        File tmp = new File(snapshot.getPath() + ".tmp");
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16)) {
+            PhotoCodec.write(user, generation, out);
+        }
+        Files.move(tmp.toPath(), snapshot.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Applies the records in the journal file to a user.
+     * A record that was only partially written (e.g. because the application was killed)
+     * or cannot be applied ends the replay.
+     *
+     * @param target the user to apply the records to
+     * @return the length of the journal up to the end of the last record applied, which
+     *         is the file's length if every record was applied, or -1 if the journal
+     *         file could not be read
+     */
+    private long applyTo(User target) {
+        records = 0;
+        if (!file.exists()) {
+            return 0;
+        }
+        long length = file.length();
+        long end = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            in.readLong();
+            end = Long.BYTES;
+            while (true) {
+                byte[] record;
+                try {
+                    int size = in.readInt();
+                    if (size < 0 || size > length - end - Integer.BYTES) {
+                        return end;
+                    }
+                    record = new byte[size];
+                    in.readFully(record);
+                } catch (EOFException torn) {
+                    return end;
+                }
+                try {
+                    apply(target, new DataInputStream(new ByteArrayInputStream(record)));
+                } catch (IOException | RuntimeException malformed) {
+                    System.err.println("Error replaying journal: " + malformed.getMessage());
+                    return end;
+                }
+                end += Integer.BYTES + record.length;
+                records++;
+            }
+        } catch (EOFException empty) {
+            return end;
+        } catch (IOException error) {
+            System.err.println("Error replaying journal: " + error.getMessage());
+            return -1;
+        }
+    }
+
+    /**
+     * Reads the snapshot generation from the journal header.
+     *
+     * @return the generation, or -1 if the header cannot be read
+     */
+    private long readGeneration() {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            return in.readLong();
+        } catch (IOException error) {
+            return -1;
+        }
+    }
+
+    /**
+     * Applies a single journal record to a user.
+     *
+     * @param user the user to apply the record to
+     * @param in the record contents
+     * @throws IOException if the record is malformed
+     */
+    private static void apply(User user, DataInputStream in) throws IOException {
+        byte op = in.readByte();
+        switch (op) {
+            case CREATE_ALBUM: {
+                String name = in.readUTF();
+                if (user.getAlbumByName(name) == null) {
+                    user.CreateAlbum(name);
+                }
+                break;
+            }
+            case RENAME_ALBUM:
+                user.RenameAlbum(in.readUTF(), in.readUTF());
+                break;
+            case DELETE_ALBUM:
+                user.DeleteAlbum(in.readUTF());
+                break;
+            case ADD_PHOTO: {
+                Album album = user.getAlbumByName(in.readUTF());
+                String path = in.readUTF();
+                LocalDateTime date = LocalDateTime.parse(in.readUTF());
+                StorePhoto photo = new StorePhoto(path, date);
+                // Records written before photos had a size end after the date
+                if (in.available() > 0) {
+                    photo.setDimensions(Integer.parseInt(in.readUTF()), Integer.parseInt(in.readUTF()),
+                            Integer.parseInt(in.readUTF()));
+                }
+                if (in.available() > 0) {
+                    photo.setFileSize(Long.parseLong(in.readUTF()));
+                }
+                if (album != null && album.getPhotoByPath(path) == null) {
+                    album.addPhoto(photo);
+                }
+                break;
+            }
+            case LINK_PHOTO: {
+                Album source = user.getAlbumByName(in.readUTF());
+                Album target = user.getAlbumByName(in.readUTF());
+                String path = in.readUTF();
+                StorePhoto photo = source == null ? null : source.getPhotoByPath(path);
+                if (photo != null && target != null && target.getPhotoByPath(path) == null) {
+                    target.addPhoto(photo);
+                }
+                break;
+            }
+            case REMOVE_PHOTO: {
+                Album album = user.getAlbumByName(in.readUTF());
+                StorePhoto photo = album == null ? null : album.getPhotoByPath(in.readUTF());
+                if (photo != null) {
+                    album.removePhoto(photo);
+                }
+                break;
+            }
+            case ADD_TAG:
+            case REMOVE_TAG:
+            case SET_CAPTION: {
+                Album album = user.getAlbumByName(in.readUTF());
+                StorePhoto photo = album == null ? null : album.getPhotoByPath(in.readUTF());
+                if (photo == null) {
+                    break;
+                }
+                if (op == SET_CAPTION) {
+                    photo.setCaption(in.readUTF());
+                } else if (op == ADD_TAG) {
+                    photo.addTag(new Tag(in.readUTF(), in.readUTF()));
+                } else {
+                    photo.removeTags(new Tag(in.readUTF(), in.readUTF()));
+                }
+                break;
+            }
+            default:
+                throw new IOException("Unknown journal record " + op);
+        }
+    }
+
+    /**
+     * Encodes a record and queues it for the writer thread.
+     *
+     * @param op the operation code
+     * @param fields the string fields of the record
+     */
+    private void append(byte op, String... fields) {
+        if (closed) {
+            return;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream record = new DataOutputStream(bytes)) {
+            record.writeByte(op);
+            for (String field : fields) {
+                record.writeUTF(field);
+            }
+        } catch (IOException err) {
+            System.err.println("Error encoding journal record: " + err.getMessage());
+            return;
+        }
+
+        pending.add(bytes.toByteArray());
+        PersistenceService.getInstance().markDirty(this);
+    }
+
+    /**
+     * Finds the album of the journal's user holding the given photo instance.
+     *
+     * @param photo the photo to look for
+     * @param exclude an album to skip, or null
+     * @return an album containing the photo, or null if none does
+     */
+    private Album locate(StorePhoto photo, Album exclude) {
+        for (Album album : user.getAlbumsContaining(photo)) {
+            if (album != exclude) {
+                return album;
+            }
+        }
+        return null;
+    }
+}
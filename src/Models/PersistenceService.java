@@ -0,0 +1,112 @@
+package Models;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind persistence for the user data.
+ * Journals (and the user index) mark themselves dirty when an edit is recorded, and a
+ * single background writer thread appends everything recorded during a short window
+ * in one write.
+ * UI handlers therefore never wait on disk I/O, except through the explicit
+ * {@link #flush()} used when logging out or exiting.
+ */
+public class PersistenceService {
+
+    /** How long a burst of edits is collected before it is written, in milliseconds. */
+    public static final long WRITE_DELAY_MS = 500;
+
+    private static PersistenceService instance;
+
+    private final ScheduledExecutorService writer;
+    private final Set<Flushable> dirty = new LinkedHashSet<>();
+    private ScheduledFuture<?> scheduled;
+
+    private PersistenceService() {
+        writer = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "persistence-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Gets the singleton instance of the persistence service.
+     *
+     * @return the persistence service
+     */
+    public static synchronized PersistenceService getInstance() {
+        if (instance == null) {
+            instance = new PersistenceService();
+        }
+        return instance;
+    }
+
+    /**
+     * Marks a journal or index as having changes that still need to be written.
+     * The write is scheduled once per burst, so many edits in quick succession
+     * are coalesced into a single append.
+     *
+     * @param target the journal or index with unwritten changes
+     */
+    public synchronized void markDirty(Flushable target) {
+        dirty.add(target);
+        if (scheduled == null && !writer.isShutdown()) {
+            scheduled = writer.schedule(this::writeDirty, WRITE_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Writes everything that is dirty now and waits for the write to finish.
+     * Called on logout and on exit so no recorded edit is lost.
+     */
+    public void flush() {
+        if (writer.isShutdown()) {
+            writeDirty();
+            return;
+        }
+        try {
+            writer.submit(this::writeDirty).get();
+        } catch (InterruptedException err) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException err) {
+            System.err.println("Error saving users: " + err.getCause().getMessage());
+        }
+    }
+
+    /**
+     * Flushes any pending edits and stops the writer thread.
+     */
+    public void shutdown() {
+        flush();
+        writer.shutdown();
+    }
+
+    /**
+     * Writes everything marked dirty since the last write.
+     */
+    private void writeDirty() {
+        List<Flushable> batch;
+        synchronized (this) {
+            batch = new ArrayList<>(dirty);
+            dirty.clear();
+            scheduled = null;
+        }
+        for (Flushable target : batch) {
+            try {
+                target.flush();
+            } catch (IOException err) {
+                System.err.println("Error saving users: " + err.getMessage());
+            }
+        }
+    }
+}
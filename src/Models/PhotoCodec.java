@@ -0,0 +1,275 @@
+package Models;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary format for a user's shard.
+ * Every string (album names, captions, tag keys and values, and the folder and file name
+ * halves of each path) is written once to a string table and referenced by index
+ * afterwards, integers are written as varints, and photo dates are stored as epoch
+ * seconds. Photos shared between albums are written once and referenced from each
+ * album by index, so sharing survives a round trip.
+ *
+ * <p>Layout: magic, format version, snapshot generation, string table, photo table,
+ * album table. Version 2 adds each photo's width, height and orientation after its tags.
+ * Version 3 adds the user's last photo id after the username and each photo's stable id
+ * before its path. Version 4 adds each photo's file size after its orientation, so album
+ * summaries are rebuilt as the albums are read without looking at the files. Version 5 writes
+ * each distinct tag once, in a tag table after the string table, and each photo's tags
+ * as indexes into it. Older shards are still read; their photos get new ids in album
+ * order.</p>
+ */
+public class PhotoCodec {
+
+    /** Marks a shard written by this codec ("PH37"). */
+    public static final int MAGIC = 0x50483337;
+
+    /** Current version of the format. */
+    public static final int VERSION = 5;
+
+    private PhotoCodec() {
+    }
+
+    /**
+     * Checks whether a stream starts with a Java serialization header, i.e. holds a
+     * shard written before this codec existed. The stream must support mark/reset.
+     *
+     * @param in the stream to check
+     * @return true if the stream holds a serialized object
+     * @throws IOException if the stream cannot be read
+     */
+    public static boolean isSerialized(InputStream in) throws IOException {
+        in.mark(2);
+        int first = in.read();
+        int second = in.read();
+        in.reset();
+        return first == 0xAC && second == 0xED;
+    }
+
+    /**
+     * Writes a user and all of their albums and photos.
+     *
+     * @param user the user to write
+     * @param generation the snapshot generation stored in the header
+     * @param stream the stream to write to
+     * @throws IOException if the user cannot be written
+     */
+    public static void write(User user, long generation, OutputStream stream) throws IOException {
+        Map<String, Integer> strings = new LinkedHashMap<>();
+        Map<StorePhoto, Integer> photos = new IdentityHashMap<>();
+        Map<Tag, Integer> tags = new LinkedHashMap<>();
+        List<StorePhoto> photoTable = new ArrayList<>();
+
+        intern(strings, user.getUsername());
+        for (Album album : user.getAlbums()) {
+            intern(strings, album.getName());
+            for (StorePhoto photo : album.getPhotos()) {
+                if (photos.putIfAbsent(photo, photoTable.size()) == null) {
+                    photoTable.add(photo);
+                    int split = folderLength(photo.getPath());
+                    intern(strings, photo.getPath().substring(0, split));
+                    intern(strings, photo.getPath().substring(split));
+                    intern(strings, photo.getCaption());
+                    for (Tag tag : photo.getTags()) {
+                        if (tags.putIfAbsent(tag, tags.size()) == null) {
+                            intern(strings, tag.getKey());
+                            intern(strings, tag.getVal());
+                        }
+                    }
+                }
+            }
+        }
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, 1 << 16));
+        out.writeInt(MAGIC);
+        writeVarint(out, VERSION);
+        out.writeLong(generation);
+
+        writeVarint(out, strings.size());
+        for (String value : strings.keySet()) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(out, bytes.length);
+            out.write(bytes);
+        }
+
+        writeVarint(out, tags.size());
+        for (Tag tag : tags.keySet()) {
+            writeVarint(out, strings.get(tag.getKey()));
+            writeVarint(out, strings.get(tag.getVal()));
+        }
+
+        writeVarint(out, strings.get(user.getUsername()));
+        writeVarlong(out, user.getLastPhotoId());
+        writeVarint(out, photoTable.size());
+        for (StorePhoto photo : photoTable) {
+            writeVarlong(out, photo.getPhotoId());
+            int split = folderLength(photo.getPath());
+            writeVarint(out, strings.get(photo.getPath().substring(0, split)));
+            writeVarint(out, strings.get(photo.getPath().substring(split)));
+            writeVarint(out, photo.getCaption() == null ? 0 : strings.get(photo.getCaption()) + 1);
+            LocalDateTime date = photo.getDateTaken();
+            writeVarlong(out, zigzag(date.toEpochSecond(ZoneOffset.UTC)));
+            writeVarint(out, date.getNano());
+            writeVarint(out, photo.getTags().size());
+            for (Tag tag : photo.getTags()) {
+                writeVarint(out, tags.get(tag));
+            }
+            writeVarint(out, photo.getWidth());
+            writeVarint(out, photo.getHeight());
+            writeVarint(out, photo.getOrientation());
+            writeVarlong(out, photo.getFileSize());
+        }
+
+        writeVarint(out, user.getAlbums().size());
+        for (Album album : user.getAlbums()) {
+            writeVarint(out, strings.get(album.getName()));
+            writeVarint(out, album.getPhotos().size());
+            for (StorePhoto photo : album.getPhotos()) {
+                writeVarint(out, photos.get(photo));
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Reads a user written by {@link #write}.
+     *
+     * @param stream the stream to read from
+     * @param generation receives the snapshot generation stored in the header
+     * @return the user
+     * @throws IOException if the data is not a valid shard or uses a newer format version
+     */
+    public static User read(InputStream stream, long[] generation) throws IOException {
+        DataInputStream in = new DataInputStream(stream);
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a photo library shard");
+        }
+        int version = readVarint(in);
+        if (version > VERSION) {
+            throw new IOException("Unsupported shard version " + version);
+        }
+        generation[0] = in.readLong();
+
+        String[] strings = new String[readVarint(in)];
+        byte[] buffer = new byte[64];
+        for (int i = 0; i < strings.length; i++) {
+            int length = readVarint(in);
+            if (length > buffer.length) {
+                buffer = new byte[Math.max(length, buffer.length * 2)];
+            }
+            in.readFully(buffer, 0, length);
+            strings[i] = new String(buffer, 0, length, StandardCharsets.UTF_8);
+        }
+
+        Tag[] tags = null;
+        if (version >= 5) {
+            tags = new Tag[readVarint(in)];
+            for (int i = 0; i < tags.length; i++) {
+                tags[i] = Tag.of(strings[readVarint(in)], strings[readVarint(in)]);
+            }
+        }
+
+        User user = new User(strings[readVarint(in)]);
+        if (version >= 3) {
+            user.reservePhotoIds(readVarlong(in));
+        }
+
+        StorePhoto[] photos = new StorePhoto[readVarint(in)];
+        for (int i = 0; i < photos.length; i++) {
+            long photoId = version >= 3 ? readVarlong(in) : 0;
+            String folder = strings[readVarint(in)];
+            String path = folder.concat(strings[readVarint(in)]);
+            int caption = readVarint(in);
+            long seconds = unzigzag(readVarlong(in));
+            int nanos = readVarint(in);
+            StorePhoto photo = new StorePhoto(path, LocalDateTime.ofEpochSecond(seconds, nanos, ZoneOffset.UTC));
+            photo.photoId = photoId;
+            if (caption > 0) {
+                photo.setCaption(strings[caption - 1]);
+            }
+            int tagCount = readVarint(in);
+            for (int t = 0; t < tagCount; t++) {
+                photo.addTag(tags != null ? tags[readVarint(in)] : Tag.of(strings[readVarint(in)], strings[readVarint(in)]));
+            }
+            if (version >= 2) {
+                photo.setDimensions(readVarint(in), readVarint(in), readVarint(in));
+            }
+            if (version >= 4) {
+                photo.setFileSize(readVarlong(in));
+            }
+            photos[i] = photo;
+        }
+
+        int albums = readVarint(in);
+        for (int a = 0; a < albums; a++) {
+            String name = strings[readVarint(in)];
+            user.CreateAlbum(name);
+            Album album = user.getAlbums().get(user.getAlbums().size() - 1);
+            int count = readVarint(in);
+            for (int p = 0; p < count; p++) {
+                album.addPhoto(photos[readVarint(in)]);
+            }
+        }
+        return user;
+    }
+
+    /**
+     * Gets the length of the folder part of a path, including the trailing separator.
+     *
+     * @param path a photo path
+     * @return the index where the file name starts
+     */
+    private static int folderLength(String path) {
+        return Math.max(path.lastIndexOf('/'), path.lastIndexOf('\\')) + 1;
+    }
+
+    private static void intern(Map<String, Integer> strings, String value) {
+        if (value != null) {
+            strings.putIfAbsent(value, strings.size());
+        }
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarint(DataOutputStream out, int value) throws IOException {
+        writeVarlong(out, value & 0xFFFFFFFFL);
+    }
+
+    private static void writeVarlong(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static int readVarint(DataInputStream in) throws IOException {
+        return (int) readVarlong(in);
+    }
+
+    private static long readVarlong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+}
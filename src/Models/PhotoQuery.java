@@ -0,0 +1,570 @@
+package Models;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PrimitiveIterator;
+
+/**
+ * A boolean search over one user's photos, for example
+ * {@code (person=alice OR person=bob) AND location=paris AND date>=2023-01-01}.
+ *
+ * <p>Predicates are {@code key=value} for a tag, {@code date} compared with {@code =},
+ * {@code <}, {@code <=}, {@code >} or {@code >=} against a {@code yyyy-MM-dd} date,
+ * {@code album=name} for album membership, and {@code caption~text} (contains) or
+ * {@code caption=text} (whole caption), both ignoring case. Predicates are combined with
+ * AND, OR, NOT and parentheses; AND may be left out between two predicates. Keys and
+ * values containing spaces or operator characters are written in double quotes.</p>
+ *
+ * <p>Predicates evaluate to {@link PhotoBitmap}s of photo ids, so AND, OR and NOT over
+ * indexed predicates are bitmap operations. Each AND is planned when it runs: its
+ * operands are ordered by their estimated number of matches using the user's tag, date
+ * and caption indexes, the most selective one is looked up, further indexed operands are
+ * intersected as bitmaps while the candidate set is still large, and the rest are
+ * checked photo by photo on the candidates.</p>
+ */
+public class PhotoQuery {
+
+    private final Node root;
+
+    private PhotoQuery(Node root) {
+        this.root = root;
+    }
+
+    /**
+     * Parses a query.
+     *
+     * @param text the query text
+     * @return the parsed query
+     * @throws IllegalArgumentException if the text is not a valid query
+     */
+    public static PhotoQuery parse(String text) {
+        Parser parser = new Parser(text);
+        Node root = parser.parseOr();
+        if (parser.peek().type != TokenType.END) {
+            throw new IllegalArgumentException("Unexpected '" + parser.peek().text + "'");
+        }
+        return new PhotoQuery(root);
+    }
+
+    /**
+     * Runs the query against a user's photos.
+     *
+     * @param user the user whose photos are searched
+     * @return the matching photos, each listed once
+     */
+    public List<StorePhoto> execute(User user) {
+        Execution run = new Execution(user);
+        return new ArrayList<>(run.registry.view(root.evaluate(run)));
+    }
+
+    /**
+     * State for one run of a query.
+     */
+    private static class Execution {
+        final User user;
+        final PhotoRegistry registry;
+
+        Execution(User user) {
+            this.user = user;
+            this.registry = user.getRegistry();
+        }
+
+        /**
+         * Converts photos to a bitmap of their ids.
+         */
+        PhotoBitmap toIds(Collection<StorePhoto> photos) {
+            PhotoBitmap ids = new PhotoBitmap();
+            for (StorePhoto photo : photos) {
+                if (registry.contains(photo)) {
+                    ids.add(photo.id);
+                }
+            }
+            return ids;
+        }
+
+        /**
+         * Keeps the candidates that match every one of the given nodes.
+         */
+        PhotoBitmap filter(PhotoBitmap candidates, List<Node> nodes) {
+            PhotoBitmap matches = new PhotoBitmap();
+            for (PrimitiveIterator.OfInt it = candidates.iterator(); it.hasNext(); ) {
+                int id = it.nextInt();
+                StorePhoto photo = registry.get(id);
+                boolean all = true;
+                for (Node node : nodes) {
+                    if (!node.matches(this, photo)) {
+                        all = false;
+                        break;
+                    }
+                }
+                if (all) {
+                    matches.add(id);
+                }
+            }
+            return matches;
+        }
+    }
+
+    private abstract static class Node {
+
+        /** Estimates an upper bound on the number of matching photos; used to order AND operands. */
+        abstract long estimate(Execution run);
+
+        /** Whether {@link #evaluate} is answered from an index rather than a scan. */
+        abstract boolean indexed();
+
+        /** Finds the ids of all matching photos. The result must not be modified. */
+        abstract PhotoBitmap evaluate(Execution run);
+
+        /** Checks a single photo. */
+        abstract boolean matches(Execution run, StorePhoto photo);
+    }
+
+    private static class TagNode extends Node {
+        private final Tag tag;
+
+        TagNode(Tag tag) {
+            this.tag = tag;
+        }
+
+        @Override
+        long estimate(Execution run) {
+            return run.user.getTagIds(tag).cardinality();
+        }
+
+        @Override
+        boolean indexed() {
+            return true;
+        }
+
+        @Override
+        PhotoBitmap evaluate(Execution run) {
+            return run.user.getTagIds(tag);
+        }
+
+        @Override
+        boolean matches(Execution run, StorePhoto photo) {
+            return photo.getTags().contains(tag);
+        }
+    }
+
+    private static class DateNode extends Node {
+        private final LocalDateTime start;
+        private final LocalDateTime end;
+
+        DateNode(LocalDateTime start, LocalDateTime end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        long estimate(Execution run) {
+            return start.isAfter(end) ? 0 : run.user.countPhotosInDateRange(start, end);
+        }
+
+        @Override
+        boolean indexed() {
+            return true;
+        }
+
+        @Override
+        PhotoBitmap evaluate(Execution run) {
+            if (start.isAfter(end)) {
+                return new PhotoBitmap();
+            }
+            return run.toIds(run.user.getPhotosInDateRange(start, end));
+        }
+
+        @Override
+        boolean matches(Execution run, StorePhoto photo) {
+            LocalDateTime date = photo.getDateTaken();
+            return !date.isBefore(start) && !date.isAfter(end);
+        }
+    }
+
+    private static class AlbumNode extends Node {
+        private final String name;
+
+        AlbumNode(String name) {
+            this.name = name;
+        }
+
+        @Override
+        long estimate(Execution run) {
+            Album album = run.user.getAlbumByName(name);
+            return album == null ? 0 : album.getPhotos().size();
+        }
+
+        @Override
+        boolean indexed() {
+            return true;
+        }
+
+        @Override
+        PhotoBitmap evaluate(Execution run) {
+            Album album = run.user.getAlbumByName(name);
+            return album == null ? new PhotoBitmap() : run.toIds(album.getPhotos());
+        }
+
+        @Override
+        boolean matches(Execution run, StorePhoto photo) {
+            // The registry knows each photo's albums, so no set of the album is built
+            Album album = run.user.getAlbumByName(name);
+            return album != null && run.registry.isInAlbum(album, photo);
+        }
+    }
+
+    private static class CaptionNode extends Node {
+        private final String text;
+        private final boolean whole;
+
+        CaptionNode(String text, boolean whole) {
+            this.text = text.toLowerCase(Locale.ROOT);
+            this.whole = whole;
+        }
+
+        @Override
+        long estimate(Execution run) {
+            return run.user.estimateCaptionMatches(text);
+        }
+
+        @Override
+        boolean indexed() {
+            return true;
+        }
+
+        @Override
+        PhotoBitmap evaluate(Execution run) {
+            PhotoBitmap matches = run.user.getCaptionIds(text);
+            return whole ? run.filter(matches, Collections.singletonList(this)) : matches;
+        }
+
+        @Override
+        boolean matches(Execution run, StorePhoto photo) {
+            if (photo.getCaption() == null) {
+                return false;
+            }
+            String caption = photo.getCaption().toLowerCase(Locale.ROOT);
+            return whole ? caption.equals(text) : caption.contains(text);
+        }
+    }
+
+    private static class NotNode extends Node {
+        private final Node operand;
+
+        NotNode(Node operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        long estimate(Execution run) {
+            // The operand's estimate is only an upper bound, so nothing can be subtracted
+            return run.registry.size();
+        }
+
+        @Override
+        boolean indexed() {
+            return operand.indexed();
+        }
+
+        @Override
+        PhotoBitmap evaluate(Execution run) {
+            return run.registry.ids().andNot(operand.evaluate(run));
+        }
+
+        @Override
+        boolean matches(Execution run, StorePhoto photo) {
+            return !operand.matches(run, photo);
+        }
+    }
+
+    private static class AndNode extends Node {
+        private final List<Node> operands;
+
+        AndNode(List<Node> operands) {
+            this.operands = operands;
+        }
+
+        @Override
+        long estimate(Execution run) {
+            long smallest = Long.MAX_VALUE;
+            for (Node operand : operands) {
+                smallest = Math.min(smallest, operand.estimate(run));
+            }
+            return smallest;
+        }
+
+        @Override
+        boolean indexed() {
+            for (Node operand : operands) {
+                if (operand.indexed()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        PhotoBitmap evaluate(Execution run) {
+            Map<Node, Long> estimates = new HashMap<>();
+            for (Node operand : operands) {
+                estimates.put(operand, operand.estimate(run));
+            }
+            List<Node> plan = new ArrayList<>(operands);
+            plan.sort(Comparator.comparing(estimates::get));
+            if (estimates.get(plan.get(0)) == 0) {
+                return new PhotoBitmap();
+            }
+
+            // Start from the most selective operand. Indexed operands are intersected as
+            // bitmaps while that is cheaper than checking the candidates one by one.
+            PhotoBitmap matches = plan.get(0).evaluate(run);
+            List<Node> remaining = new ArrayList<>();
+            for (Node operand : plan.subList(1, plan.size())) {
+                if (operand.indexed() && (long) matches.cardinality() * 8 >= estimates.get(operand)) {
+                    matches = matches.and(operand.evaluate(run));
+                } else {
+                    remaining.add(operand);
+                }
+            }
+            return remaining.isEmpty() ? matches : run.filter(matches, remaining);
+        }
+
+        @Override
+        boolean matches(Execution run, StorePhoto photo) {
+            for (Node operand : operands) {
+                if (!operand.matches(run, photo)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static class OrNode extends Node {
+        private final List<Node> operands;
+
+        OrNode(List<Node> operands) {
+            this.operands = operands;
+        }
+
+        @Override
+        long estimate(Execution run) {
+            long total = 0;
+            for (Node operand : operands) {
+                total += operand.estimate(run);
+            }
+            return Math.min(total, run.registry.size());
+        }
+
+        @Override
+        boolean indexed() {
+            for (Node operand : operands) {
+                if (!operand.indexed()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        PhotoBitmap evaluate(Execution run) {
+            PhotoBitmap matches = new PhotoBitmap();
+            for (Node operand : operands) {
+                matches = matches.or(operand.evaluate(run));
+            }
+            return matches;
+        }
+
+        @Override
+        boolean matches(Execution run, StorePhoto photo) {
+            for (Node operand : operands) {
+                if (operand.matches(run, photo)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private enum TokenType {
+        WORD, OPERATOR, OPEN, CLOSE, END
+    }
+
+    private static class Token {
+        final TokenType type;
+        final String text;
+        final boolean quoted;
+
+        Token(TokenType type, String text, boolean quoted) {
+            this.type = type;
+            this.text = text;
+            this.quoted = quoted;
+        }
+
+        boolean isKeyword(String keyword) {
+            return type == TokenType.WORD && !quoted && text.equalsIgnoreCase(keyword);
+        }
+    }
+
+    /**
+     * Recursive descent parser; OR binds weaker than AND, which binds weaker than NOT.
+     */
+    private static class Parser {
+        private static final String OPERATOR_CHARS = "=<>~";
+
+        private final List<Token> tokens = new ArrayList<>();
+        private int position;
+
+        Parser(String text) {
+            int i = 0;
+            while (i < text.length()) {
+                char c = text.charAt(i);
+                if (Character.isWhitespace(c)) {
+                    i++;
+                } else if (c == '(' || c == ')') {
+                    tokens.add(new Token(c == '(' ? TokenType.OPEN : TokenType.CLOSE, String.valueOf(c), false));
+                    i++;
+                } else if (c == '"') {
+                    int close = text.indexOf('"', i + 1);
+                    if (close < 0) {
+                        throw new IllegalArgumentException("Missing closing quote");
+                    }
+                    tokens.add(new Token(TokenType.WORD, text.substring(i + 1, close), true));
+                    i = close + 1;
+                } else if (OPERATOR_CHARS.indexOf(c) >= 0) {
+                    int length = (c == '<' || c == '>') && i + 1 < text.length() && text.charAt(i + 1) == '=' ? 2 : 1;
+                    tokens.add(new Token(TokenType.OPERATOR, text.substring(i, i + length), false));
+                    i += length;
+                } else {
+                    int start = i;
+                    while (i < text.length() && !Character.isWhitespace(text.charAt(i))
+                            && "()\"".indexOf(text.charAt(i)) < 0 && OPERATOR_CHARS.indexOf(text.charAt(i)) < 0) {
+                        i++;
+                    }
+                    tokens.add(new Token(TokenType.WORD, text.substring(start, i), false));
+                }
+            }
+            tokens.add(new Token(TokenType.END, "end of query", false));
+        }
+
+        Token peek() {
+            return tokens.get(position);
+        }
+
+        Token next() {
+            return tokens.get(position++);
+        }
+
+        Node parseOr() {
+            List<Node> operands = new ArrayList<>();
+            operands.add(parseAnd());
+            while (peek().isKeyword("OR")) {
+                next();
+                operands.add(parseAnd());
+            }
+            return operands.size() == 1 ? operands.get(0) : new OrNode(operands);
+        }
+
+        Node parseAnd() {
+            List<Node> operands = new ArrayList<>();
+            operands.add(parseUnary());
+            while (true) {
+                Token token = peek();
+                if (token.isKeyword("AND")) {
+                    next();
+                } else if (token.type == TokenType.END || token.type == TokenType.CLOSE || token.isKeyword("OR")) {
+                    break;
+                }
+                operands.add(parseUnary());
+            }
+            return operands.size() == 1 ? operands.get(0) : new AndNode(operands);
+        }
+
+        Node parseUnary() {
+            Token token = peek();
+            if (token.isKeyword("NOT")) {
+                next();
+                return new NotNode(parseUnary());
+            }
+            if (token.type == TokenType.OPEN) {
+                next();
+                Node inner = parseOr();
+                if (next().type != TokenType.CLOSE) {
+                    throw new IllegalArgumentException("Missing closing parenthesis");
+                }
+                return inner;
+            }
+            return parsePredicate();
+        }
+
+        Node parsePredicate() {
+            Token field = next();
+            if (field.type != TokenType.WORD || field.text.isEmpty()) {
+                throw new IllegalArgumentException("Expected a search term but found '" + field.text + "'");
+            }
+            Token operator = next();
+            if (operator.type != TokenType.OPERATOR) {
+                throw new IllegalArgumentException("Expected an operator after '" + field.text + "'");
+            }
+            Token value = next();
+            if (value.type != TokenType.WORD) {
+                throw new IllegalArgumentException("Expected a value after '" + field.text + operator.text + "'");
+            }
+
+            String name = field.quoted ? field.text : field.text.toLowerCase(Locale.ROOT);
+            String op = operator.text;
+            if (!field.quoted && name.equals("date")) {
+                return dateNode(op, value.text);
+            }
+            if (!field.quoted && name.equals("caption")) {
+                if (!op.equals("~") && !op.equals("=")) {
+                    throw new IllegalArgumentException("'" + field.text + "' only supports '~' and '='");
+                }
+                return new CaptionNode(value.text, op.equals("="));
+            }
+            if (!op.equals("=")) {
+                throw new IllegalArgumentException("'" + field.text + "' only supports '='");
+            }
+            if (!field.quoted && name.equals("album")) {
+                return new AlbumNode(value.text);
+            }
+            return new TagNode(new Tag(field.text, value.text));
+        }
+
+        private static Node dateNode(String op, String text) {
+            LocalDate date;
+            try {
+                date = LocalDate.parse(text);
+            } catch (DateTimeParseException e) {
+                throw new IllegalArgumentException("Invalid date '" + text + "', expected yyyy-MM-dd");
+            }
+            LocalDateTime startOfDay = date.atStartOfDay();
+            LocalDateTime endOfDay = date.atTime(LocalTime.MAX);
+            switch (op) {
+                case "=":
+                    return new DateNode(startOfDay, endOfDay);
+                case ">=":
+                    return new DateNode(startOfDay, LocalDateTime.MAX);
+                case ">":
+                    return new DateNode(date.plusDays(1).atStartOfDay(), LocalDateTime.MAX);
+                case "<=":
+                    return new DateNode(LocalDateTime.MIN, endOfDay);
+                case "<":
+                    return new DateNode(LocalDateTime.MIN, startOfDay.minusNanos(1));
+                default:
+                    throw new IllegalArgumentException("'date' does not support '" + op + "'");
+            }
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package Models;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Set;
+
+/**
+ * Dense integer ids for the photos in one user's albums.
+ * A photo gets an id when it joins its first album and gives it back when it leaves
+ * the last one; freed ids are reused so the ids stay compact and the bitmaps built on
+ * them stay small. These ids only live as long as the registry; the id that is saved
+ * with a photo and never reused is {@link StorePhoto#getPhotoId()}, and the registry
+ * maps that back to the photo too. The registry also records which albums hold each
+ * photo and which photos use each file path, so membership and duplicate checks do not
+ * scan the albums.
+ */
+public class PhotoRegistry {
+
+    private static final Album[] NO_ALBUMS = new Album[0];
+
+    private StorePhoto[] photos = new StorePhoto[16];
+    private Album[][] albums = new Album[16][];
+    private int[] albumCounts = new int[16];
+    private int[] freeIds = new int[16];
+    private int freeCount;
+    private int nextId;
+    private final PhotoBitmap live = new PhotoBitmap();
+    private final Map<Long, StorePhoto> byPhotoId = new HashMap<>();
+    private final Map<String, List<StorePhoto>> byPath = new HashMap<>();
+
+    /**
+     * Records that a photo was added to an album.
+     *
+     * @param album the album the photo was added to
+     * @param photo the added photo
+     * @return true if the photo was not in any album before
+     */
+    public boolean add(Album album, StorePhoto photo) {
+        if (contains(photo)) {
+            addAlbum(photo.id, album);
+            return false;
+        }
+        int id = freeCount > 0 ? freeIds[--freeCount] : nextId++;
+        if (id == photos.length) {
+            photos = Arrays.copyOf(photos, id * 2);
+            albums = Arrays.copyOf(albums, id * 2);
+            albumCounts = Arrays.copyOf(albumCounts, id * 2);
+        }
+        photos[id] = photo;
+        albums[id] = NO_ALBUMS;
+        albumCounts[id] = 0;
+        addAlbum(id, album);
+        photo.id = id;
+        live.add(id);
+        byPhotoId.put(photo.getPhotoId(), photo);
+        byPath.computeIfAbsent(photo.getPath(), path -> new ArrayList<>(1)).add(photo);
+        return true;
+    }
+
+    /**
+     * Records that a photo was removed from an album.
+     *
+     * @param album the album the photo was removed from
+     * @param photo the removed photo
+     * @return true if the photo is no longer in any album
+     */
+    public boolean remove(Album album, StorePhoto photo) {
+        if (!contains(photo) || removeAlbum(photo.id, album) > 0) {
+            return false;
+        }
+        int id = photo.id;
+        photos[id] = null;
+        albums[id] = null;
+        live.remove(id);
+        byPhotoId.remove(photo.getPhotoId());
+        List<StorePhoto> samePath = byPath.get(photo.getPath());
+        if (samePath != null) {
+            samePath.remove(photo);
+            if (samePath.isEmpty()) {
+                byPath.remove(photo.getPath());
+            }
+        }
+        if (freeCount == freeIds.length) {
+            freeIds = Arrays.copyOf(freeIds, freeCount * 2);
+        }
+        freeIds[freeCount++] = id;
+        return true;
+    }
+
+    /**
+     * Gets the photo with a stable photo id.
+     *
+     * @param photoId the id saved with the photo
+     * @return the photo, or null if none of the user's albums holds it
+     */
+    public StorePhoto getByPhotoId(long photoId) {
+        return byPhotoId.get(photoId);
+    }
+
+    /**
+     * Gets the photos that use a file.
+     *
+     * @param path the path of the file
+     * @return the photos, possibly none
+     */
+    public List<StorePhoto> getByPath(String path) {
+        List<StorePhoto> samePath = byPath.get(path);
+        return samePath == null ? Collections.emptyList() : Collections.unmodifiableList(samePath);
+    }
+
+    /**
+     * Gets the albums holding a photo. An album holding the photo twice is listed twice.
+     *
+     * @param photo the photo
+     * @return the albums, possibly none
+     */
+    public List<Album> getAlbums(StorePhoto photo) {
+        if (!contains(photo)) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(Arrays.asList(albums[photo.id]).subList(0, albumCounts[photo.id]));
+    }
+
+    /**
+     * Checks whether an album holds a photo, looking only at the photo's own albums.
+     *
+     * @param album the album
+     * @param photo the photo
+     * @return true if the album holds the photo
+     */
+    public boolean isInAlbum(Album album, StorePhoto photo) {
+        if (!contains(photo)) {
+            return false;
+        }
+        Album[] holders = albums[photo.id];
+        for (int i = 0; i < albumCounts[photo.id]; i++) {
+            if (holders[i] == album) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void addAlbum(int id, Album album) {
+        int count = albumCounts[id];
+        if (count == albums[id].length) {
+            albums[id] = Arrays.copyOf(albums[id], Math.max(2, count * 2));
+        }
+        albums[id][count] = album;
+        albumCounts[id] = count + 1;
+    }
+
+    /**
+     * Drops one occurrence of an album from a photo's albums.
+     *
+     * @return the number of albums still holding the photo
+     */
+    private int removeAlbum(int id, Album album) {
+        Album[] holders = albums[id];
+        int count = albumCounts[id];
+        for (int i = 0; i < count; i++) {
+            if (holders[i] == album) {
+                holders[i] = holders[count - 1];
+                holders[count - 1] = null;
+                albumCounts[id] = --count;
+                break;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Checks whether a photo is in any of the user's albums.
+     * The photo's id field is only trusted if it points back at the photo.
+     *
+     * @param photo the photo to check
+     * @return true if the photo has an id here
+     */
+    public boolean contains(StorePhoto photo) {
+        int id = photo.id;
+        return id >= 0 && id < nextId && photos[id] == photo;
+    }
+
+    /**
+     * Gets the photo with an id.
+     *
+     * @param id the id
+     * @return the photo, or null if the id is not in use
+     */
+    public StorePhoto get(int id) {
+        return id >= 0 && id < nextId ? photos[id] : null;
+    }
+
+    /**
+     * Counts the photos in the user's albums.
+     *
+     * @return the number of distinct photos
+     */
+    public int size() {
+        return nextId - freeCount;
+    }
+
+    /**
+     * Gets the ids of all photos in the user's albums.
+     * The bitmap is live and must not be modified.
+     *
+     * @return the ids in use
+     */
+    public PhotoBitmap ids() {
+        return live;
+    }
+
+    /**
+     * Views a set of ids as a set of photos, in id order.
+     *
+     * @param ids the ids to view
+     * @return a read-only set backed by the bitmap
+     */
+    public Set<StorePhoto> view(PhotoBitmap ids) {
+        return new AbstractSet<StorePhoto>() {
+            @Override
+            public Iterator<StorePhoto> iterator() {
+                PrimitiveIterator.OfInt it = ids.iterator();
+                return new Iterator<StorePhoto>() {
+                    @Override
+                    public boolean hasNext() {
+                        return it.hasNext();
+                    }
+
+                    @Override
+                    public StorePhoto next() {
+                        if (!it.hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        return photos[it.nextInt()];
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return ids.cardinality();
+            }
+
+            @Override
+            public boolean contains(Object o) {
+                return o instanceof StorePhoto && PhotoRegistry.this.contains((StorePhoto) o)
+                        && ids.contains(((StorePhoto) o).id);
+            }
+        };
+    }
+}
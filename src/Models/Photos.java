@@ -7,7 +7,6 @@ import javafx.scene.Scene;
 import javafx.stage.Stage;  
 import java.io.Serializable;
 import java.time.LocalDateTime;
-import java.util.List;
 
   
 /**
@@ -26,47 +25,32 @@ public class Photos extends Application implements Serializable {
      */
     @Override
     public void start(Stage primary) throws Exception{
+        // Copy imported photos into the content-addressed library when started with --library=managed
+        BlobStore.setManaged("managed".equals(getParameters().getNamed().get("library")));
+
         // Initialize the Admin instance
         Admin admin = Admin.getAdmin();
     
         // Load user data from the file
         try {
-            admin.loadUsers("src/User-Data/users.dat");
+            admin.loadUsers("src/User-Data");
 
             //Initialize stock user
 
             //Check if the stock user still exists
-            List <User> people = admin.getUsers();
-
-            User copy = null; //Initialize a User to store the stock user
-            for (User user : people) {
-                if ("stock".equals(user.getUsername())) { 
-                    copy = user; 
-                    break; 
-                }
-            }
-
-
-            if (copy == null || !copy.username.equals( "stock")){
+            if (!admin.hasUser("stock")){
                 admin.addUser("stock");
-                List <User> up = admin.getUsers();
-
-                User stockUser = null; 
-                for (User user : up) {
-                    if ("stock".equals(user.getUsername())) { 
-                        stockUser = user; 
-                        break; 
-                    }
-                }   
+                User stockUser = admin.getUserByUsername("stock").get();
 
                 stockUser.CreateAlbum("stock");
+                admin.getJournal(stockUser).createAlbum("stock");
                 Album stock = stockUser.getAlbumByName("stock");
                 LocalDateTime now = LocalDateTime.now();
-                stock.addPhoto(new StorePhoto("data/coffee1.jpg", now));
-                stock.addPhoto(new StorePhoto("data/coffee2.jpg", now));
-                stock.addPhoto(new StorePhoto("data/coffee3.jpg", now));
-                stock.addPhoto(new StorePhoto("data/coffee4.jpg", now));
-                stock.addPhoto(new StorePhoto("data/coffee5.jpg", now));
+                for (int i = 1; i <= 5; i++) {
+                    StorePhoto photo = new StorePhoto("data/coffee" + i + ".jpg", now);
+                    stock.addPhoto(photo);
+                    admin.getJournal(stockUser).addPhoto(stock, photo);
+                }
             }
             
         } catch (Exception e) {
@@ -81,6 +65,15 @@ public class Photos extends Application implements Serializable {
         primary.show();
     }
 
+    /**
+     * Called when the application exits.
+     * Writes any edits still waiting in the persistence service before the JVM shuts down.
+     */
+    @Override
+    public void stop() {
+        PersistenceService.getInstance().shutdown();
+    }
+
     /**
      * The start method is called after the init method has returned, runs our app
      *
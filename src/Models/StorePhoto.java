@@ -1,9 +1,13 @@
 package Models;
 
 import java.util.Set;
-import java.util.HashSet;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 
 /**
  * Represents a photo stored in an album.
@@ -15,6 +19,13 @@ public class StorePhoto implements Serializable {
     public LocalDateTime  date;
     public String caption;
     public String imagePath; 
+    public int width;
+    public int height;
+    public int orientation;
+    public long fileSize;
+    public long photoId;
+    transient User owner;
+    transient int id;
     
     /**
      * Constructs a new StorePhoto with the specified image path and date.
@@ -25,11 +36,51 @@ public class StorePhoto implements Serializable {
     public StorePhoto(String imagePath, LocalDateTime  date ) {
         this.imagePath = imagePath;
         this.date = date;
-        this.tags = new HashSet<>();
+        this.tags = new TagSet();
         
     }
 
 
+    /**
+     * Creates a photo for an image file, taking its date, size and orientation from the
+     * file's header. The date falls back to the file's modification time when the file
+     * does not record when it was taken.
+     *
+     * @param file The image file.
+     * @return The new photo.
+     */
+    public static StorePhoto fromFile(File file) {
+        ImageMetadata metadata = null;
+        try {
+            metadata = ImageMetadata.read(file.toPath());
+        } catch (IOException e) {
+            System.err.println("Error reading image metadata: " + e.getMessage());
+        }
+        LocalDateTime date = metadata == null ? null : metadata.getDateTaken();
+        if (date == null) {
+            date = Instant.ofEpochMilli(file.lastModified())
+                          .atZone(ZoneId.systemDefault())
+                          .toLocalDateTime()
+                          .withNano(0);
+        }
+        StorePhoto photo = new StorePhoto(file.getAbsolutePath(), date);
+        photo.setFileSize(file.length());
+        if (metadata != null) {
+            photo.setDimensions(metadata.getWidth(), metadata.getHeight(), metadata.getOrientation());
+        }
+        return photo;
+    }
+
+    /**
+     * Returns the stable id of the photo. It is handed out by the owning user when the
+     * photo first joins one of their albums, is saved with the photo and is never reused.
+     *
+     * @return The photo id, or 0 if the photo has not been added to an album yet.
+     */
+    public long getPhotoId(){
+        return photoId;
+    }
+
     /**
      * Returns the file path of the photo.
      *
@@ -46,7 +97,12 @@ public class StorePhoto implements Serializable {
      */
     public void setCaption(String Caption)
     {
+        String oldCaption = this.caption;
         this.caption = Caption;
+        if (owner != null) {
+            owner.captionChanged(this, oldCaption);
+            owner.photoUpdated(this);
+        }
     }
 
     /**
@@ -60,12 +116,16 @@ public class StorePhoto implements Serializable {
     }
 
     /**
-     * Adds a tag to the photo.
+     * Adds a tag to the photo. The photo keeps the tag dictionary's shared instance.
      *
      * @param tag The tag to add to the photo.
      */
     public void addTag(Tag tag){
-        tags.add(tag);
+        tag = TagDictionary.getInstance().intern(tag);
+        if (tags.add(tag) && owner != null) {
+            owner.tagAdded(this, tag);
+            owner.photoUpdated(this);
+        }
     }
     
     /**
@@ -75,7 +135,13 @@ public class StorePhoto implements Serializable {
      * @return true if the tag was removed; false otherwise.
      */
     public boolean removeTags(Tag tag){
-        return tags.remove(tag);
+        tag = TagDictionary.getInstance().find(tag);
+        boolean removed = tag != null && tags.remove(tag);
+        if (removed && owner != null) {
+            owner.tagRemoved(this, tag);
+            owner.photoUpdated(this);
+        }
+        return removed;
     }
     
     /**
@@ -88,14 +154,85 @@ public class StorePhoto implements Serializable {
     }
 
     /**
-     * Sets the set of tags for the photo.
+     * Sets the set of tags for the photo. The photo keeps its own copy of the set.
      *
      * @param tags The set of tags to be associated with the photo.
      */
     public void setTags(Set<Tag> tag){
-        this.tags = tag;
+        TagSet replacement = new TagSet(tag);
+        if (owner != null) {
+            for (Tag old : this.tags) {
+                owner.tagRemoved(this, old);
+            }
+            for (Tag added : replacement) {
+                owner.tagAdded(this, added);
+            }
+        }
+        this.tags = replacement;
+        if (owner != null) {
+            owner.photoUpdated(this);
+        }
     }
     
+    /**
+     * Records the pixel size and EXIF orientation of the photo's image.
+     *
+     * @param width The width of the stored image, or 0 if unknown.
+     * @param height The height of the stored image, or 0 if unknown.
+     * @param orientation The EXIF orientation, 1 to 8, or 0 if unknown.
+     */
+    public void setDimensions(int width, int height, int orientation){
+        this.width = width;
+        this.height = height;
+        this.orientation = orientation;
+    }
+
+    /**
+     * Records the size of the photo's file.
+     *
+     * @param fileSize The size in bytes, or 0 if unknown.
+     */
+    public void setFileSize(long fileSize){
+        this.fileSize = fileSize;
+    }
+
+    /**
+     * Returns the size of the photo's file, as recorded when the photo was imported.
+     * Photos saved before sizes were recorded report 0.
+     *
+     * @return The size in bytes, or 0 if unknown.
+     */
+    public long getFileSize(){
+        return fileSize;
+    }
+
+    /**
+     * Returns the width of the stored image, before any rotation.
+     *
+     * @return The width in pixels, or 0 if unknown.
+     */
+    public int getWidth(){
+        return width;
+    }
+
+    /**
+     * Returns the height of the stored image, before any rotation.
+     *
+     * @return The height in pixels, or 0 if unknown.
+     */
+    public int getHeight(){
+        return height;
+    }
+
+    /**
+     * Returns the EXIF orientation of the photo's image.
+     *
+     * @return The orientation, 1 to 8, or 0 if unknown.
+     */
+    public int getOrientation(){
+        return orientation;
+    }
+
     /**
      * Returns the date when the photo was taken.
      *
@@ -111,7 +248,26 @@ public class StorePhoto implements Serializable {
      * @param date The date to set as the date taken.
      */
     public void setDateTaken(LocalDateTime  date){
+        LocalDateTime oldDate = this.date;
         this.date = date;
+        if (owner != null) {
+            owner.dateChanged(this, oldDate);
+            owner.photoUpdated(this);
+        }
+    }
+
+    /**
+     * Moves the tags of a photo read from a stream into a tag set, since photos saved
+     * before tags were interned hold a plain set.
+     *
+     * @param in The stream the photo is read from.
+     * @throws IOException If the photo cannot be read.
+     * @throws ClassNotFoundException If a class in the stream cannot be found.
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        if (!(tags instanceof TagSet)) {
+            tags = tags == null ? new TagSet() : new TagSet(tags);
+        }
     }
-   
 }
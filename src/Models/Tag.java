@@ -1,19 +1,27 @@
 package Models;
 
+import java.io.ObjectStreamException;
 import java.io.Serializable;
-import java.util.Objects;
 
 /**
  * Represents a tag that can be attached to photos.
  * A tag consists of a key (e.g., "Location") and a value (e.g., "New York").
+ * Tags are immutable. The tags held by photos are the canonical instances of the
+ * {@link TagDictionary}, which also gives each one a small id.
  */
 public class Tag implements Serializable{
-    
-    private String key; 
-    private String value; 
+    // The value computed for the class before tags became immutable, so saved tags still load
+    private static final long serialVersionUID = -6070298131630196466L;
+
+    private final String key;
+    private final String value;
+    private transient int hash;
+    private transient String label;
+    transient int id = -1;
 
      /**
      * Constructs a new Tag with the specified key and value.
+     * Use {@link #of(String, String)} for the canonical instance.
      *
      * @param key The key of the tag.
      * @param value The value of the tag.
@@ -22,25 +30,27 @@ public class Tag implements Serializable{
         this.key = key;
         this.value = value;
     }
-    
+
     /**
-     * Returns the key of the tag.
+     * Returns the canonical tag with the specified key and value.
      *
-     * @return The key of the tag.
+     * @param key The key of the tag.
+     * @param value The value of the tag.
+     * @return The shared tag instance.
      */
-    public String getKey(){
-        return key;
+    public static Tag of(String key, String value){
+        return TagDictionary.getInstance().intern(key, value);
     }
-    
+
     /**
-     * Sets the key of the tag.
+     * Returns the key of the tag.
      *
-     * @param key The new key of the tag.
+     * @return The key of the tag.
      */
-    public void setKey(String key){
-        this.key = key;
+    public String getKey(){
+        return key;
     }
-    
+
     /**
      * Returns the value of the tag.
      *
@@ -49,16 +59,16 @@ public class Tag implements Serializable{
     public String getVal(){
         return value;
     }
-    
+
     /**
-     * Sets the value of the tag.
+     * Returns the id the tag dictionary gave the tag.
      *
-     * @param value The new value of the tag.
+     * @return The id, or -1 if this is not a canonical tag.
      */
-    public void setVal(String value){
-        this.value = value;
+    public int getId(){
+        return id;
     }
-    
+
     /**
      * Indicates whether some other object is "equal to" this tag.
      * Two tags are considered equal if they have the same key and value.
@@ -71,19 +81,25 @@ public class Tag implements Serializable{
         if (this == k) return true;
         if (k == null || getClass() != k.getClass()) return false;
         Tag tags = (Tag) k;
-        return key.equals(tags.key) && value.equals(tags.value);
+        if (id >= 0 && tags.id >= 0) return false; // Distinct canonical tags are never equal
+        return hashCode() == tags.hashCode() && key.equals(tags.key) && value.equals(tags.value);
     }
 
     /**
-     * Returns a hash code value for the tag.
+     * Returns a hash code value for the tag. It is computed once.
      *
      * @return A hash code value for this tag.
      */
     @Override
     public int hashCode(){
-        return Objects.hash(key, value);
+        int h = hash;
+        if (h == 0) {
+            h = 31 * (31 + key.hashCode()) + value.hashCode();
+            hash = h;
+        }
+        return h;
     }
-    
+
     /**
      * Returns a string representation of the tag.
      * The string consists of the tag's key and value, separated by a colon and a space.
@@ -92,6 +108,22 @@ public class Tag implements Serializable{
      */
     @Override
     public String toString(){
-        return key + ": " + value;
+        String text = label;
+        if (text == null) {
+            text = key + ": " + value;
+            label = text;
+        }
+        return text;
+    }
+
+    /**
+     * Replaces a tag read from a stream with its canonical instance.
+     *
+     * @return The canonical tag.
+     * @throws ObjectStreamException Never.
+     */
+    private Object readResolve() throws ObjectStreamException {
+        // Transient fields are not initialised on a tag read from a stream, so look it up by value
+        return TagDictionary.getInstance().intern(key, value);
     }
 }
@@ -0,0 +1,113 @@
+package Models;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dictionary of every distinct tag in the library.
+ * Each key and value pair is stored once, as a canonical {@link Tag} with its hash
+ * computed up front and a dense id, and every photo holding the tag shares that
+ * instance. Tag keys are shared between the tags that use them. Photos keep their tags
+ * as ids into this dictionary, and the shard format stores each distinct tag once.
+ * Lookups may run on any thread; adding a tag is synchronized.
+ */
+public class TagDictionary {
+
+    private static TagDictionary instance;
+
+    private final Map<Tag, Tag> canonical = new ConcurrentHashMap<>();
+    private final Map<String, String> keys = new HashMap<>();
+    private volatile Tag[] byId = new Tag[64];
+    private volatile int size;
+
+    private TagDictionary() {
+    }
+
+    /**
+     * Gets the singleton instance of the dictionary.
+     *
+     * @return the tag dictionary
+     */
+    public static synchronized TagDictionary getInstance() {
+        if (instance == null) {
+            instance = new TagDictionary();
+        }
+        return instance;
+    }
+
+    /**
+     * Gets the canonical tag with a key and value, adding it if it is new.
+     *
+     * @param key the key of the tag
+     * @param value the value of the tag
+     * @return the canonical tag
+     */
+    public Tag intern(String key, String value) {
+        return intern(new Tag(key, value));
+    }
+
+    /**
+     * Gets the canonical instance of a tag, adding it if it is new.
+     *
+     * @param tag any tag
+     * @return the canonical tag equal to it
+     */
+    public Tag intern(Tag tag) {
+        if (tag.id >= 0) {
+            return tag;
+        }
+        Tag existing = canonical.get(tag);
+        return existing != null ? existing : add(tag);
+    }
+
+    /**
+     * Gets the canonical instance of a tag without adding it.
+     *
+     * @param tag any tag
+     * @return the canonical tag equal to it, or null if no photo was ever given the tag
+     */
+    public Tag find(Tag tag) {
+        return tag.id >= 0 ? tag : canonical.get(tag);
+    }
+
+    /**
+     * Gets a tag by its id.
+     *
+     * @param id an id handed out by this dictionary
+     * @return the canonical tag
+     */
+    public Tag get(int id) {
+        return byId[id];
+    }
+
+    /**
+     * Gets the number of distinct tags in the dictionary.
+     *
+     * @return the number of tags
+     */
+    public int size() {
+        return size;
+    }
+
+    private synchronized Tag add(Tag tag) {
+        Tag existing = canonical.get(tag);
+        if (existing != null) {
+            return existing;
+        }
+        String key = keys.computeIfAbsent(tag.getKey(), k -> k);
+        Tag created = new Tag(key, tag.getVal());
+        created.id = size;
+        Tag[] table = byId;
+        if (size == table.length) {
+            Tag[] grown = new Tag[table.length * 2];
+            System.arraycopy(table, 0, grown, 0, size);
+            table = grown;
+        }
+        table[size] = created;
+        byId = table;
+        size++;
+        canonical.put(created, created);
+        return created;
+    }
+}
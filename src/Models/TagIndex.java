@@ -0,0 +1,147 @@
+package Models;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PrimitiveIterator;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Inverted index from tags to the photos of one user that carry them.
+ * The index is kept current by the album and photo mutators, so tag lookups and the
+ * tag pickers never have to scan the user's albums. The owning user reports each photo
+ * once, when it joins the first album and when it leaves the last one.
+ *
+ * <p>Each tag's photos are kept as a {@link PhotoBitmap} of their registry ids, so
+ * combining tags is a bitmap operation rather than a walk over photos.</p>
+ */
+public class TagIndex {
+
+    private final PhotoRegistry registry;
+    private final Map<Tag, PhotoBitmap> photosByTag = new HashMap<>();
+    private final Map<String, Map<String, Integer>> valuesByKey = new TreeMap<>();
+
+    /**
+     * Builds the index for a user's photos.
+     *
+     * @param registry the ids of the distinct photos in the user's albums
+     */
+    public TagIndex(PhotoRegistry registry) {
+        this.registry = registry;
+        for (PrimitiveIterator.OfInt it = registry.ids().iterator(); it.hasNext(); ) {
+            photoAdded(registry.get(it.nextInt()));
+        }
+    }
+
+    /**
+     * Indexes a photo that joined the user's albums.
+     *
+     * @param photo the added photo
+     */
+    public void photoAdded(StorePhoto photo) {
+        for (Tag tag : photo.getTags()) {
+            tagAdded(photo, tag);
+        }
+    }
+
+    /**
+     * Drops a photo that is no longer in any of the user's albums.
+     *
+     * @param photo the removed photo
+     */
+    public void photoRemoved(StorePhoto photo) {
+        for (Tag tag : photo.getTags()) {
+            tagRemoved(photo, tag);
+        }
+    }
+
+    /**
+     * Indexes a tag that was added to a photo.
+     *
+     * @param photo the tagged photo
+     * @param tag the added tag
+     */
+    public void tagAdded(StorePhoto photo, Tag tag) {
+        PhotoBitmap photos = photosByTag.computeIfAbsent(tag, t -> new PhotoBitmap());
+        if (!photos.contains(photo.id)) {
+            photos.add(photo.id);
+            valuesByKey.computeIfAbsent(tag.getKey(), k -> new TreeMap<>()).merge(tag.getVal(), 1, Integer::sum);
+        }
+    }
+
+    /**
+     * Removes a tag of a photo from the index.
+     *
+     * @param photo the photo
+     * @param tag the removed tag
+     */
+    public void tagRemoved(StorePhoto photo, Tag tag) {
+        PhotoBitmap photos = photosByTag.get(tag);
+        if (photos == null || !photos.contains(photo.id)) {
+            return;
+        }
+        photos.remove(photo.id);
+        if (photos.isEmpty()) {
+            photosByTag.remove(tag);
+        }
+        Map<String, Integer> values = valuesByKey.get(tag.getKey());
+        if (values.merge(tag.getVal(), -1, Integer::sum) == 0) {
+            values.remove(tag.getVal());
+            if (values.isEmpty()) {
+                valuesByKey.remove(tag.getKey());
+            }
+        }
+    }
+
+    /**
+     * Gets the ids of the photos carrying a tag.
+     * The bitmap is live and must not be modified.
+     *
+     * @param tag the tag to look up
+     * @return the matching ids
+     */
+    public PhotoBitmap getIds(Tag tag) {
+        PhotoBitmap photos = photosByTag.get(tag);
+        return photos == null ? new PhotoBitmap() : photos;
+    }
+
+    /**
+     * Gets the photos carrying a tag.
+     *
+     * @param tag the tag to look up
+     * @return a read-only view of the matching photos
+     */
+    public Set<StorePhoto> getPhotos(Tag tag) {
+        return registry.view(getIds(tag));
+    }
+
+    /**
+     * Gets every distinct tag in use.
+     *
+     * @return a read-only view of the tags
+     */
+    public Set<Tag> getTags() {
+        return Collections.unmodifiableSet(photosByTag.keySet());
+    }
+
+    /**
+     * Gets every tag key in use, in sorted order.
+     *
+     * @return a read-only view of the tag keys
+     */
+    public Set<String> getKeys() {
+        return Collections.unmodifiableSet(valuesByKey.keySet());
+    }
+
+    /**
+     * Gets the values used with a tag key, in sorted order.
+     *
+     * @param key the tag key
+     * @return a read-only view of the values
+     */
+    public Set<String> getValues(String key) {
+        Map<String, Integer> values = valuesByKey.get(key);
+        return values == null ? Collections.emptySet() : Collections.unmodifiableSet(values.keySet());
+    }
+}
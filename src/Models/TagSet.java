@@ -0,0 +1,286 @@
+package Models;
+
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * The tags of one photo, kept as {@link TagDictionary} ids rather than tag references.
+ * Most photos carry a handful of tags, so the ids are stored in the cheapest form for
+ * their number:
+ * <ul>
+ *   <li>no tags: one array shared by every empty set, so an untagged photo costs only
+ *       the set itself;</li>
+ *   <li>up to {@link #INLINE_LIMIT} tags: a sorted array of exactly that many ids,
+ *       searched by binary search and replaced whenever a tag is added or removed;</li>
+ *   <li>more: an open-addressing hash table of ids, with {@link #FREE} in the unused
+ *       slots, which goes back to a sorted array once the set shrinks to half the
+ *       limit.</li>
+ * </ul>
+ * The mode follows from the length of the array, so no field records it. The tags
+ * themselves are the dictionary's shared instances. The set is written to a stream as
+ * a plain set of tags, since ids are only meaningful within one run.
+ */
+public class TagSet extends AbstractSet<Tag> implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /** Largest number of tags kept in a sorted array. */
+    static final int INLINE_LIMIT = 8;
+
+    /** Marks an unused slot of a hash table. */
+    private static final int FREE = -1;
+    private static final int[] EMPTY = {};
+
+    private int[] ids = EMPTY;
+    private int size;
+    private transient int modCount;
+
+    /**
+     * Creates an empty tag set.
+     */
+    public TagSet() {
+    }
+
+    /**
+     * Creates a tag set holding some tags.
+     *
+     * @param tags the tags to add
+     */
+    public TagSet(Collection<Tag> tags) {
+        addAll(tags);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        int id = idOf(o);
+        return id >= 0 && (isHashed() ? slotOf(ids, id) >= 0 : Arrays.binarySearch(ids, id) >= 0);
+    }
+
+    @Override
+    public boolean add(Tag tag) {
+        int id = TagDictionary.getInstance().intern(tag).id;
+        if (isHashed()) {
+            if (slotOf(ids, id) >= 0) {
+                return false;
+            }
+            if ((size + 1) * 2 > ids.length) {
+                ids = rehash(ids, ids.length * 2);
+            }
+            insert(ids, id);
+        } else {
+            int index = Arrays.binarySearch(ids, id);
+            if (index >= 0) {
+                return false;
+            }
+            index = -index - 1;
+            if (size == INLINE_LIMIT) {
+                ids = rehash(ids, tableSize(size + 1));
+                insert(ids, id);
+            } else {
+                int[] grown = new int[size + 1];
+                System.arraycopy(ids, 0, grown, 0, index);
+                grown[index] = id;
+                System.arraycopy(ids, index, grown, index + 1, size - index);
+                ids = grown;
+            }
+        }
+        size++;
+        modCount++;
+        return true;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        int id = idOf(o);
+        if (id < 0) {
+            return false;
+        }
+        if (isHashed()) {
+            int slot = slotOf(ids, id);
+            if (slot < 0) {
+                return false;
+            }
+            delete(ids, slot);
+            size--;
+            if (size <= INLINE_LIMIT / 2) {
+                ids = toSortedArray();
+            }
+        } else {
+            int index = Arrays.binarySearch(ids, id);
+            if (index < 0) {
+                return false;
+            }
+            int[] shrunk = size == 1 ? EMPTY : new int[size - 1];
+            System.arraycopy(ids, 0, shrunk, 0, index);
+            System.arraycopy(ids, index + 1, shrunk, index, size - index - 1);
+            ids = shrunk;
+            size--;
+        }
+        modCount++;
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        if (size > 0) {
+            ids = EMPTY;
+            size = 0;
+            modCount++;
+        }
+    }
+
+    /**
+     * Iterates over the tags. In array mode the iterator walks the current array, which
+     * is never changed in place; a hash table is first copied into a sorted array.
+     */
+    @Override
+    public Iterator<Tag> iterator() {
+        int[] order = isHashed() ? toSortedArray() : ids;
+        return new Iterator<Tag>() {
+            private int next;
+            private int expected = modCount;
+            private int last = FREE;
+
+            @Override
+            public boolean hasNext() {
+                return next < order.length;
+            }
+
+            @Override
+            public Tag next() {
+                if (expected != modCount) {
+                    throw new ConcurrentModificationException();
+                }
+                if (next >= order.length) {
+                    throw new NoSuchElementException();
+                }
+                last = order[next++];
+                return TagDictionary.getInstance().get(last);
+            }
+
+            @Override
+            public void remove() {
+                if (last == FREE) {
+                    throw new IllegalStateException();
+                }
+                if (expected != modCount) {
+                    throw new ConcurrentModificationException();
+                }
+                TagSet.this.remove(TagDictionary.getInstance().get(last));
+                expected = modCount;
+                last = FREE;
+            }
+        };
+    }
+
+    /**
+     * Finds the dictionary id of a tag without adding the tag to the dictionary.
+     *
+     * @return the id, or -1 if the object is not a tag any photo was given
+     */
+    private static int idOf(Object o) {
+        if (!(o instanceof Tag)) {
+            return -1;
+        }
+        Tag tag = TagDictionary.getInstance().find((Tag) o);
+        return tag == null ? -1 : tag.id;
+    }
+
+    private boolean isHashed() {
+        return ids.length > INLINE_LIMIT;
+    }
+
+    private int[] toSortedArray() {
+        int[] sorted = new int[size];
+        int count = 0;
+        for (int id : ids) {
+            if (id != FREE) {
+                sorted[count++] = id;
+            }
+        }
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    /**
+     * Gets a table size that keeps a number of ids at most half full.
+     */
+    private static int tableSize(int count) {
+        return Integer.highestOneBit(Math.max(count * 2 - 1, 1)) << 1;
+    }
+
+    private static int[] rehash(int[] ids, int capacity) {
+        int[] table = new int[capacity];
+        Arrays.fill(table, FREE);
+        for (int id : ids) {
+            if (id != FREE) {
+                insert(table, id);
+            }
+        }
+        return table;
+    }
+
+    private static int home(int[] table, int id) {
+        // Ids are dense, so spread them before masking
+        int h = id * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & (table.length - 1);
+    }
+
+    private static int slotOf(int[] table, int id) {
+        int mask = table.length - 1;
+        for (int slot = home(table, id); table[slot] != FREE; slot = (slot + 1) & mask) {
+            if (table[slot] == id) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private static void insert(int[] table, int id) {
+        int mask = table.length - 1;
+        int slot = home(table, id);
+        while (table[slot] != FREE) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = id;
+    }
+
+    /**
+     * Empties a slot and moves later ids of the same probe run back, so every id stays
+     * reachable from its home slot without leaving markers behind.
+     */
+    private static void delete(int[] table, int slot) {
+        int mask = table.length - 1;
+        int gap = slot;
+        for (int next = (gap + 1) & mask; table[next] != FREE; next = (next + 1) & mask) {
+            int home = home(table, table[next]);
+            // Move the id into the gap unless its home lies after the gap, up to its slot
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                table[gap] = table[next];
+                gap = next;
+            }
+        }
+        table[gap] = FREE;
+    }
+
+    /**
+     * Writes the set as a plain set of tags; they are interned again when read.
+     *
+     * @return a set holding the same tags
+     * @throws ObjectStreamException never
+     */
+    private Object writeReplace() throws ObjectStreamException {
+        return new HashSet<>(this);
+    }
+}
@@ -1,11 +1,16 @@
 package Models;
 
+import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
-import java.util.Iterator;
 
 
 /**
@@ -17,6 +22,12 @@ public class User implements Serializable {
     public static final long serialVersionUID = 1L; 
     public String username;
     public List<Album> albums; 
+    private long lastPhotoId;
+    private transient Map<String, Album> albumsByName;
+    private transient PhotoRegistry registry;
+    private transient TagIndex tagIndex;
+    private transient DateIndex dateIndex;
+    private transient CaptionIndex captionIndex;
 
      /**
      * Constructs a new User with the specified username.
@@ -54,7 +65,20 @@ public class User implements Serializable {
      */
     public void CreateAlbum(String AlbumName) 
     {
-        albums.add(new Album(AlbumName));
+        addAlbum(new Album(AlbumName));
+    }
+
+    /**
+     * Adds an existing album, along with any photos it already holds, to the user's list of albums.
+     *
+     * @param album The album to add.
+     */
+    public void addAlbum(Album album)
+    {
+        albums.add(album);
+        album.owner = this;
+        albumIndex().putIfAbsent(album.getName(), album);
+        photosAdded(album, album.getPhotos());
     }
     /**
      * Renames an existing album from its original name to a new name.
@@ -64,11 +88,9 @@ public class User implements Serializable {
      */
     public void RenameAlbum(String Og, String newName) 
     {
-        for (Album album : albums) {
-            if (album.getName().equals(Og)) {
-                album.setName(newName);
-                break; // Assuming album names are unique, break after finding the album
-            }
+        Album album = albumIndex().get(Og);
+        if (album != null) {
+            album.setName(newName);
         }
     }
 
@@ -80,14 +102,16 @@ public class User implements Serializable {
      */
     public void DeleteAlbum(String AlbumName) 
     {
-        Iterator<Album> iterator = albums.iterator();
-        while (iterator.hasNext()) {
-        Album a = iterator.next();
-        if (a.getName().equals(AlbumName)) { // Assuming getName() is the method to get album's name
-            iterator.remove();
-            break;
+        Album a = albumIndex().remove(AlbumName);
+        if (a == null) {
+            return;
+        }
+        // Albums compare equal by name, so remove this one by identity
+        albums.removeIf(album -> album == a);
+        a.owner = null;
+        for (StorePhoto photo : a.getPhotos()) {
+            photoRemoved(a, photo);
         }
-    }
     }
 
     
@@ -99,12 +123,37 @@ public class User implements Serializable {
      */
     public Album getAlbumByName(String albumName) 
     {
-        for (Album album : albums) {
-            if (album.getName().equals(albumName)) {
-                return album;
+        return albumIndex().get(albumName);
+    }
+
+    /**
+     * Updates the album name index after one of the user's albums was renamed.
+     *
+     * @param album The renamed album.
+     * @param oldName The name the album had before.
+     */
+    void albumRenamed(Album album, String oldName) {
+        Map<String, Album> index = albumIndex();
+        if (index.get(oldName) == album) {
+            index.remove(oldName);
+        }
+        index.putIfAbsent(album.getName(), album);
+    }
+
+    /**
+     * Returns the user's albums by name, in the order they were added, building the
+     * index on first use. Album names are unique, so each name maps to one album.
+     *
+     * @return The album name index.
+     */
+    private Map<String, Album> albumIndex() {
+        if (albumsByName == null) {
+            albumsByName = new LinkedHashMap<>();
+            for (Album album : albums) {
+                albumsByName.putIfAbsent(album.getName(), album);
             }
         }
-        return null; 
+        return albumsByName;
     }
 
     /**
@@ -113,15 +162,482 @@ public class User implements Serializable {
      * @return A set of unique tag keys.
      */
     public Set<String> getAllTags() {
-        Set<String> allTags = new HashSet<>();
-        for (Album album : this.albums) { 
+        return new HashSet<>(getTagIndex().getKeys());
+    }
+
+    /**
+     * Collects every distinct tag used on the user's photos.
+     *
+     * @return A read-only set of tags.
+     */
+    public Set<Tag> getTags() {
+        return getTagIndex().getTags();
+    }
+
+    /**
+     * Collects the values used with a tag key on the user's photos.
+     *
+     * @param key The tag key.
+     * @return A read-only, sorted set of values.
+     */
+    public Set<String> getTagValues(String key) {
+        return getTagIndex().getValues(key);
+    }
+
+    /**
+     * Finds the user's photos that carry a tag.
+     *
+     * @param tag The tag to look up.
+     * @return A read-only set of matching photos, each listed once.
+     */
+    public Set<StorePhoto> getPhotosWithTag(Tag tag) {
+        return getTagIndex().getPhotos(tag);
+    }
+
+    /**
+     * Finds the date of the user's earliest photo.
+     *
+     * @return The earliest date, or null if the user has no photos.
+     */
+    public LocalDateTime getEarliestDate() {
+        buildIndexes();
+        return dateIndex.getEarliest();
+    }
+
+    /**
+     * Finds the date of the user's latest photo.
+     *
+     * @return The latest date, or null if the user has no photos.
+     */
+    public LocalDateTime getLatestDate() {
+        buildIndexes();
+        return dateIndex.getLatest();
+    }
+
+    /**
+     * Finds the user's photos taken within a date range.
+     *
+     * @param start The start of the range, inclusive.
+     * @param end The end of the range, inclusive.
+     * @return The matching photos, oldest first, each listed once.
+     */
+    public List<StorePhoto> getPhotosInDateRange(LocalDateTime start, LocalDateTime end) {
+        buildIndexes();
+        return dateIndex.getRange(start, end);
+    }
+
+    /**
+     * Estimates how many of the user's photos were taken within a date range.
+     *
+     * @param start The start of the range, inclusive.
+     * @param end The end of the range, inclusive.
+     * @return The approximate number of matching photos.
+     */
+    public int countPhotosInDateRange(LocalDateTime start, LocalDateTime end) {
+        buildIndexes();
+        return dateIndex.count(start, end);
+    }
+
+    /**
+     * Collects every photo in the user's albums.
+     *
+     * @return A read-only set of the user's photos, each listed once.
+     */
+    public Set<StorePhoto> getPhotos() {
+        buildIndexes();
+        return registry.view(registry.ids());
+    }
+
+    /**
+     * Finds a photo by the id saved with it.
+     *
+     * @param photoId The photo's stable id.
+     * @return The photo, or null if none of the user's albums holds it.
+     */
+    public StorePhoto getPhoto(long photoId) {
+        buildRegistry();
+        return registry.getByPhotoId(photoId);
+    }
+
+    /**
+     * Lists the user's albums that hold a photo.
+     *
+     * @param photo The photo.
+     * @return The albums holding the photo, possibly none.
+     */
+    public List<Album> getAlbumsContaining(StorePhoto photo) {
+        buildRegistry();
+        return registry.getAlbums(photo);
+    }
+
+    /**
+     * Checks whether an album holds a photo without scanning the album.
+     *
+     * @param album The album.
+     * @param photo The photo.
+     * @return True if the album holds the photo.
+     */
+    boolean isInAlbum(Album album, StorePhoto photo) {
+        buildRegistry();
+        return registry.isInAlbum(album, photo);
+    }
+
+    /**
+     * Finds the photo of an album that uses a file, without scanning the album.
+     *
+     * @param album The album.
+     * @param path The path of the file.
+     * @return The photo, or null if the album has no photo of that file.
+     */
+    StorePhoto findPhoto(Album album, String path) {
+        buildRegistry();
+        for (StorePhoto photo : registry.getByPath(path)) {
+            if (registry.isInAlbum(album, photo)) {
+                return photo;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the highest stable photo id handed out so far.
+     *
+     * @return The last photo id.
+     */
+    long getLastPhotoId() {
+        return lastPhotoId;
+    }
+
+    /**
+     * Makes sure photo ids handed out from now on are higher than a given id.
+     *
+     * @param photoId The highest id already used.
+     */
+    void reservePhotoIds(long photoId) {
+        lastPhotoId = Math.max(lastPhotoId, photoId);
+    }
+
+    /**
+     * Finds the user's photos that carry every one of the given tags.
+     *
+     * @param tags The tags to look up.
+     * @return A read-only set of matching photos, each listed once.
+     */
+    public Set<StorePhoto> getPhotosWithAllTags(Collection<Tag> tags) {
+        buildIndexes();
+        PhotoBitmap matches = null;
+        for (Tag tag : tags) {
+            PhotoBitmap ids = tagIndex.getIds(tag);
+            matches = matches == null ? ids : matches.and(ids);
+        }
+        return registry.view(matches == null ? new PhotoBitmap() : matches);
+    }
+
+    /**
+     * Finds the user's photos that carry at least one of the given tags.
+     *
+     * @param tags The tags to look up.
+     * @return A read-only set of matching photos, each listed once.
+     */
+    public Set<StorePhoto> getPhotosWithAnyTag(Collection<Tag> tags) {
+        buildIndexes();
+        PhotoBitmap matches = new PhotoBitmap();
+        for (Tag tag : tags) {
+            matches = matches.or(tagIndex.getIds(tag));
+        }
+        return registry.view(matches);
+    }
+
+    /**
+     * Finds the user's photos whose captions best match some words.
+     * The last word also matches longer words it is the start of.
+     *
+     * @param query The words to search for.
+     * @return The matching photos, best match first.
+     */
+    public List<StorePhoto> searchCaptions(String query) {
+        return getCaptionIndex().search(query);
+    }
+
+    /**
+     * Finds the user's photos whose caption contains some text, ignoring case.
+     *
+     * @param text The text to look for.
+     * @return A read-only set of matching photos.
+     */
+    public Set<StorePhoto> getPhotosWithCaptionText(String text) {
+        PhotoBitmap ids = getCaptionIds(text);
+        return registry.view(ids);
+    }
+
+    /**
+     * Finds the user's photos with a caption word starting with a prefix, ignoring case.
+     *
+     * @param prefix The start of a word.
+     * @return A read-only set of matching photos.
+     */
+    public Set<StorePhoto> getPhotosWithCaptionPrefix(String prefix) {
+        PhotoBitmap ids = getCaptionIndex().findPrefix(prefix);
+        return registry.view(ids);
+    }
+
+    /**
+     * Returns the ids of the photos whose caption contains some text.
+     *
+     * @param text The text to look for.
+     * @return The matching photo ids.
+     */
+    PhotoBitmap getCaptionIds(String text) {
+        return getCaptionIndex().findSubstring(text);
+    }
+
+    /**
+     * Estimates how many of the user's captions contain some text.
+     *
+     * @param text The text to look for.
+     * @return An upper bound on the number of matching photos.
+     */
+    int estimateCaptionMatches(String text) {
+        return getCaptionIndex().estimateSubstring(text);
+    }
+
+    /**
+     * Returns the ids of the user's photos, building the indexes on first use.
+     *
+     * @return The photo registry.
+     */
+    PhotoRegistry getRegistry() {
+        buildRegistry();
+        return registry;
+    }
+
+    /**
+     * Returns the ids of the photos carrying a tag. The bitmap must not be modified.
+     *
+     * @param tag The tag to look up.
+     * @return The matching photo ids.
+     */
+    PhotoBitmap getTagIds(Tag tag) {
+        buildIndexes();
+        return tagIndex.getIds(tag);
+    }
+
+    /**
+     * Returns the tag index, building it from the user's albums on first use.
+     *
+     * @return The tag index.
+     */
+    private TagIndex getTagIndex() {
+        buildIndexes();
+        return tagIndex;
+    }
+
+    /**
+     * Returns the caption index, building it on the first caption search.
+     * It is kept apart from the other indexes because it is much larger to build.
+     *
+     * @return The caption index.
+     */
+    private CaptionIndex getCaptionIndex() {
+        buildRegistry();
+        if (captionIndex == null) {
+            captionIndex = new CaptionIndex(registry);
+        }
+        return captionIndex;
+    }
+
+    /**
+     * Builds the photo registry from the user's albums on first use.
+     * A photo shared by several albums is counted once per album but registered once.
+     */
+    private void buildRegistry() {
+        if (registry != null) {
+            return;
+        }
+        registry = new PhotoRegistry();
+        for (Album album : albums) {
+            for (StorePhoto photo : album.getPhotos()) {
+                registry.add(album, photo);
+            }
+        }
+    }
+
+    /**
+     * Builds the tag and date indexes, and the registry they use, on first use.
+     */
+    private void buildIndexes() {
+        buildRegistry();
+        if (tagIndex != null) {
+            return;
+        }
+        tagIndex = new TagIndex(registry);
+        dateIndex = new DateIndex(registry.view(registry.ids()));
+    }
+
+    /**
+     * Called by an album when a photo is added to it.
+     * A photo joining the user for the first time is given its stable id here.
+     *
+     * @param album The album the photo was added to.
+     * @param photo The added photo.
+     */
+    void photoAdded(Album album, StorePhoto photo) {
+        if (register(album, photo)) {
+            if (tagIndex != null) {
+                tagIndex.photoAdded(photo);
+                dateIndex.photoAdded(photo);
+            }
+            if (captionIndex != null) {
+                captionIndex.photoAdded(photo);
+            }
+        }
+    }
+
+    /**
+     * Called by an album when several photos are added to it at once.
+     * The photos new to the user are merged into the date index together.
+     *
+     * @param album The album the photos were added to.
+     * @param photos The added photos.
+     */
+    void photosAdded(Album album, List<StorePhoto> photos) {
+        List<StorePhoto> indexed = new ArrayList<>();
+        for (StorePhoto photo : photos) {
+            if (register(album, photo)) {
+                indexed.add(photo);
+            }
+        }
+        if (indexed.isEmpty()) {
+            return;
+        }
+        if (tagIndex != null) {
+            for (StorePhoto photo : indexed) {
+                tagIndex.photoAdded(photo);
+            }
+            dateIndex.photosAdded(indexed);
+        }
+        if (captionIndex != null) {
+            for (StorePhoto photo : indexed) {
+                captionIndex.photoAdded(photo);
+            }
+        }
+    }
+
+    /**
+     * Gives a photo its owner and id and records it in the registry.
+     *
+     * @return true if the photo is new to the user's albums and must be indexed
+     */
+    private boolean register(Album album, StorePhoto photo) {
+        photo.owner = this;
+        if (photo.photoId == 0) {
+            photo.photoId = ++lastPhotoId;
+        } else {
+            reservePhotoIds(photo.photoId);
+        }
+        return registry != null && registry.add(album, photo);
+    }
+
+    /**
+     * Called by an album when a photo is removed from it.
+     * The photo stays indexed until it has been removed from all of the user's albums.
+     *
+     * @param album The album the photo was removed from.
+     * @param photo The removed photo.
+     */
+    void photoRemoved(Album album, StorePhoto photo) {
+        if (registry != null && registry.remove(album, photo)) {
+            if (tagIndex != null) {
+                tagIndex.photoRemoved(photo);
+                dateIndex.photoRemoved(photo);
+            }
+            if (captionIndex != null) {
+                captionIndex.photoRemoved(photo);
+            }
+        }
+    }
+
+    /**
+     * Called by a photo when a tag is added to it.
+     *
+     * @param photo The tagged photo.
+     * @param tag The added tag.
+     */
+    void tagAdded(StorePhoto photo, Tag tag) {
+        if (tagIndex != null && registry.contains(photo)) {
+            tagIndex.tagAdded(photo, tag);
+        }
+    }
+
+    /**
+     * Called by a photo when a tag is removed from it.
+     *
+     * @param photo The photo.
+     * @param tag The removed tag.
+     */
+    void tagRemoved(StorePhoto photo, Tag tag) {
+        if (tagIndex != null && registry.contains(photo)) {
+            tagIndex.tagRemoved(photo, tag);
+        }
+    }
+
+    /**
+     * Called by a photo when its date is changed.
+     *
+     * @param photo The photo.
+     * @param oldDate The date before the change.
+     */
+    void dateChanged(StorePhoto photo, LocalDateTime oldDate) {
+        if (dateIndex != null && registry.contains(photo)) {
+            dateIndex.dateChanged(photo, oldDate);
+        }
+        for (Album album : getAlbumsContaining(photo)) {
+            album.dateChanged(photo, oldDate);
+        }
+    }
+
+    /**
+     * Called by a photo when its caption is changed.
+     *
+     * @param photo The photo.
+     * @param oldCaption The caption before the change.
+     */
+    void captionChanged(StorePhoto photo, String oldCaption) {
+        if (captionIndex != null && registry.contains(photo)) {
+            captionIndex.captionChanged(photo, oldCaption);
+        }
+    }
+
+    /**
+     * Called by a photo after its caption, date or tags changed, so the albums showing it can update.
+     *
+     * @param photo The changed photo.
+     */
+    void photoUpdated(StorePhoto photo) {
+        for (Album album : getAlbumsContaining(photo)) {
+            album.photoUpdated(photo);
+        }
+    }
+
+    /**
+     * Restores the links from albums and photos back to this user after deserialization.
+     *
+     * @param in The stream the user is read from.
+     * @throws IOException If the user cannot be read.
+     * @throws ClassNotFoundException If a class in the stream cannot be found.
+     */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        for (Album album : albums) {
+            album.owner = this;
             for (StorePhoto photo : album.getPhotos()) {
-                for (Tag tag : photo.getTags()) {
-                    allTags.add(tag.getKey()); 
+                photo.owner = this;
+                // Users saved before photos had stable ids get them in album order
+                if (photo.photoId == 0) {
+                    photo.photoId = ++lastPhotoId;
                 }
             }
         }
-        return allTags;
     }
     
 }
\ No newline at end of file